@@ -0,0 +1,74 @@
+package simulation;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of whole steps and of populating a field, at several
+ * grid sizes and densities. The density is set by the number of steps
+ * run before measuring: a freshly populated field is sparse, and it
+ * fills up with rabbits over the first few dozen steps.
+ *
+ * Every iteration starts from the same state, forked from a prepared
+ * simulation, so iterations measure comparable steps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark
+{
+    @Param({"80", "200", "400"})
+    public int size;
+
+    @Param({"0", "40"})
+    public int steps;
+
+    @Param({"mixed", "phased"})
+    public String order;
+
+    // The prepared simulation, and the branch of it being stepped.
+    private SimulationEngine trunk;
+    private SimulationEngine engine;
+
+    @Setup(Level.Trial)
+    public void prepare()
+    {
+        trunk = new SimulationEngine(Dictionary.defaults(), new ChunkedField(size, size), new Randomizer(42));
+        trunk.run(steps);
+    }
+
+    @Setup(Level.Iteration)
+    public void branch()
+    {
+        engine = trunk.fork(Dictionary.defaults(), new Randomizer(7));
+        engine.setSpeciesPhased(order.equals("phased"));
+    }
+
+    @Benchmark
+    public int simulateOneStep()
+    {
+        engine.simulateOneStep();
+        return engine.getStep();
+    }
+
+    @Benchmark
+    public int populate()
+    {
+        engine.reset();
+        return engine.getActors().size();
+    }
+}
@@ -0,0 +1,114 @@
+package simulation;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the neighbourhood queries and counts of a field,
+ * for each field backend, on a field populated and then run for a
+ * number of steps, so that its occupancy is typical of a run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark
+{
+    // The number of locations queried by each invocation.
+    private static final int LOCATIONS = 1024;
+
+    @Param({"flat", "object", "chunked"})
+    public String backend;
+
+    @Param({"80", "400"})
+    public int size;
+
+    @Param({"0", "40"})
+    public int steps;
+
+    private Field field;
+    private Location[] locations;
+    private int[] counts;
+
+    @Setup
+    public void setUp()
+    {
+        Field empty;
+        if(backend.equals("object")) {
+            empty = new ObjectField(size, size);
+        }
+        else if(backend.equals("chunked")) {
+            empty = new ChunkedField(size, size);
+        }
+        else {
+            empty = new FlatField(size, size);
+        }
+        SimulationEngine engine = new SimulationEngine(Dictionary.defaults(), empty, new Randomizer(42));
+        engine.run(steps);
+        field = engine.getField();
+        Randomizer rand = new Randomizer(7);
+        locations = new Location[LOCATIONS];
+        for(int i = 0; i < LOCATIONS; i++) {
+            locations[i] = new Location(rand.nextInt(size), rand.nextInt(size));
+        }
+        counts = new int[Species.COUNT];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOCATIONS)
+    public void adjacentLocations(Blackhole blackhole)
+    {
+        for(Location location : locations) {
+            blackhole.consume(field.adjacentLocations(location));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOCATIONS)
+    public void freeAdjacentLocations(Blackhole blackhole)
+    {
+        for(Location location : locations) {
+            blackhole.consume(field.getFreeAdjacentLocations(location));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOCATIONS)
+    public void maleAdjacentLocations(Blackhole blackhole)
+    {
+        for(Location location : locations) {
+            blackhole.consume(field.getMaleAdjacentLocations(Rabbit.class, location));
+        }
+    }
+
+    @Benchmark
+    public int[] census()
+    {
+        Arrays.fill(counts, 0);
+        field.census(counts);
+        return counts;
+    }
+
+    @Benchmark
+    public int[] population()
+    {
+        Arrays.fill(counts, 0);
+        field.population(counts);
+        return counts;
+    }
+}
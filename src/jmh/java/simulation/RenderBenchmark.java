@@ -0,0 +1,93 @@
+package simulation;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the work SimulatorView.showStatus does for a frame,
+ * drawing into offscreen images so that no display is needed: taking
+ * a snapshot of the field, colouring one pixel per location, and
+ * scaling the image up as the field view paints it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark
+{
+    // The scaling of the field view.
+    private static final int SCALE = 6;
+
+    @Param({"80", "400"})
+    public int size;
+
+    private Field field;
+    private FieldSnapshot snapshot;
+    private int[] colors;
+    private BufferedImage image;
+    private int[] pixels;
+    private BufferedImage screen;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp()
+    {
+        SimulationEngine engine = new SimulationEngine(Dictionary.defaults(), size, size, new Randomizer(42));
+        engine.run(40);
+        field = engine.getField();
+        snapshot = new FieldSnapshot(size, size);
+        colors = new int[Species.COUNT];
+        for(int species = 0; species < Species.COUNT; species++) {
+            colors[species] = 0x404040 * species;
+        }
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        screen = new BufferedImage(size * SCALE, size * SCALE, BufferedImage.TYPE_INT_RGB);
+        graphics = screen.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public FieldSnapshot capture()
+    {
+        snapshot.capture(1, field);
+        return snapshot;
+    }
+
+    @Benchmark
+    public int[] render()
+    {
+        SimulatorView.render(snapshot.getSpecies(), colors, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public BufferedImage showStatus()
+    {
+        snapshot.capture(1, field);
+        SimulatorView.render(snapshot.getSpecies(), colors, pixels);
+        graphics.drawImage(image, 0, 0, screen.getWidth(), screen.getHeight(), null);
+        return screen;
+    }
+}
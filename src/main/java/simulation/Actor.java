@@ -1,36 +1,53 @@
 package simulation;
-import java.util.List;
-import java.util.Random;
 
-public abstract class Actor {
-	// Whether the animal is alive or not.
-    private boolean alive;
+/**
+ * A participant in the simulation. The changing state of an actor
+ * (age, food level, gender and location) is kept in an ActorStore;
+ * the actor object is a view of its slot there.
+ */
+public abstract class Actor implements Cloneable {
+    // The store holding the animal's state, and its slot there.
+    private ActorStore store;
+    private int slot;
     // The animal's field.
     private Field field;
-    // The animal's position in the field.
-    private Location location;
     private int max_age;
-    private int age;
-    private static final Random rand = Randomizer.getRandom();
 
-    public Actor(int max_age, boolean randomAge, Field field, Location location)
+    /**
+     * Create a new actor at location in field. It is added to the
+     * births of the given context.
+     * 
+     * @param context The working state of the current step.
+     * @param field The field currently occupied.
+     * @param location The location within the field.
+     */
+    public Actor(int max_age, boolean randomAge, StepContext context, Field field, Location location)
     {
-    	alive = true;
     	this.max_age = max_age;
         this.field = field;
+        store = context.getBirths();
+        slot = store.add(this, getSpecies());
         setLocation(location);
-        age = 0;
+        context.getEvents().born(getSpecies(), location.getRow(), location.getCol());
         if(randomAge) {
-            age = rand.nextInt(getMaxAge());
+            store.setAge(slot, context.getRandom().nextInt(getMaxAge()));
         }
     }
     
     /**
      * Make this actor act - that is: make it do
      * whatever it wants/needs to do.
-     * @param newAnimals A list to receive newly born actors.
+     * @param context The working state of the current step,
+     *                which receives newly born actors.
+     */
+    abstract public void act(StepContext context);
+    
+    /**
+     * Return the species of this actor, as stored in the
+     * species grid of the field.
+     * @return One of the ids defined in Species.
      */
-    abstract public void act(List<Actor> newActors);
+    abstract protected byte getSpecies();
     
     protected int getMaxAge()
     {
@@ -44,27 +61,39 @@ public abstract class Actor {
     
     protected int getAge()
     {
-        return age;
+        return store.getAge(slot);
     }
     
     /**
      * Increase the age. This could result in the fox's death.
+     * @param context The working state of the current step.
      */
-    protected void incrementAge()
+    protected void incrementAge(StepContext context)
     {
-        age++;
+        int age = store.getAge(slot) + 1;
+        store.setAge(slot, age);
         if(age > getMaxAge()) {
-            setDead();
+            setDead(StepMetrics.AGE, context);
         }
     }
     
+    protected int getFoodLevel()
+    {
+        return store.getFoodLevel(slot);
+    }
+    
+    protected void setFoodLevel(int level)
+    {
+        store.setFoodLevel(slot, level);
+    }
+    
     /**
      * Check whether the animal is alive or not.
      * @return true if the animal is still alive.
      */
     protected boolean isAlive()
     {
-        return alive;
+        return store.getLocation(slot) != ActorStore.NOWHERE;
     }
 
     /**
@@ -73,21 +102,90 @@ public abstract class Actor {
      */
     protected void setDead()
     {
-        alive = false;
-        if(location != null) {
-            field.clear(location);
-            location = null;
+        if(isAlive()) {
+            field.clear(getRow(), getCol());
+            store.setLocation(slot, ActorStore.NOWHERE);
             field = null;
         }
     }
 
+    /**
+     * Indicate that the animal has died of a cause, which is counted
+     * in the metrics of the simulation. It is removed from the field.
+     * @param cause The cause of death, as defined in StepMetrics.
+     * @param context The working state of the current step.
+     */
+    protected void setDead(int cause, StepContext context)
+    {
+        if(isAlive()) {
+            context.getMetrics().died(cause);
+            setDead();
+        }
+    }
+
+    /**
+     * Look for prey adjacent to the current location, as listed in
+     * the predation table. Only the first live prey caught is eaten.
+     * @param context The working state of the current step.
+     * @return true if food was found, in which case the context's
+     *         neighbourhood cursor is left on where it was.
+     */
+    protected boolean findFood(StepContext context)
+    {
+        byte predator = getSpecies();
+        Randomizer rand = context.getRandom();
+        Neighbourhood near = context.getNeighbourhood();
+        near.around(getField(), getRow(), getCol(), rand);
+        while(near.next()) {
+            int foodValue = Predation.getFoodValue(predator, near.getSpecies());
+            if(foodValue >= 0) {
+                Actor prey = (Actor) near.getObject();
+                if(prey.isAlive() && Predation.catches(predator, rand)) {
+                    eat(prey, context);
+                    if(foodValue > 0) {
+                        setFoodLevel(Math.min(getFoodLevel() + foodValue, Predation.getMaxFood(predator)));
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Eat, or shoot, another actor, which dies.
+     * @param prey The actor eaten.
+     * @param context The working state of the current step.
+     */
+    protected void eat(Actor prey, StepContext context)
+    {
+        context.getEvents().eaten(getSpecies(), prey.getSpecies(), prey.getRow(), prey.getCol());
+        prey.setDead(Predation.shoots(getSpecies()) ? StepMetrics.HUNTING : StepMetrics.PREDATION, context);
+    }
+
     /**
      * Return the animal's location.
      * @return The animal's location.
      */
     protected Location getLocation()
     {
-        return location;
+        return isAlive() ? new Location(getRow(), getCol()) : null;
+    }
+    
+    /**
+     * @return The row of the animal's location.
+     */
+    protected int getRow()
+    {
+        return Location.rowOf(store.getLocation(slot));
+    }
+    
+    /**
+     * @return The column of the animal's location.
+     */
+    protected int getCol()
+    {
+        return Location.colOf(store.getLocation(slot));
     }
     
     /**
@@ -96,11 +194,24 @@ public abstract class Actor {
      */
     protected void setLocation(Location newLocation)
     {
-        if(location != null) {
-            field.clear(location);
+        setLocation(newLocation.getRow(), newLocation.getCol());
+    }
+    
+    /**
+     * Place the animal at the new location in the given field.
+     * @param newRow The row of the animal's new location.
+     * @param newCol The column of the animal's new location.
+     */
+    protected void setLocation(int newRow, int newCol)
+    {
+        long location = store.getLocation(slot);
+        if(location != ActorStore.NOWHERE) {
+            field.move(Location.rowOf(location), Location.colOf(location), newRow, newCol);
         }
-        location = newLocation;
-        field.place(this, newLocation);
+        else {
+            field.place(this, newRow, newCol);
+        }
+        store.setLocation(slot, Location.pack(newRow, newCol));
     }
     
     /**
@@ -111,4 +222,53 @@ public abstract class Actor {
     {
         return field;
     }
+    
+    /**
+     * @return The store holding the animal's state.
+     */
+    protected ActorStore getStore()
+    {
+        return store;
+    }
+    
+    /**
+     * @return The animal's slot in its store.
+     */
+    protected int getSlot()
+    {
+        return slot;
+    }
+    
+    /**
+     * Create a copy of this actor for a forked simulation, with the
+     * same settings, viewing a slot of another store.
+     * @param newStore The store holding the state of the copy.
+     * @param newSlot The slot of the state in that store.
+     * @param newField The field of the copy.
+     * @return The copy.
+     */
+    Actor copyTo(ActorStore newStore, int newSlot, Field newField)
+    {
+        try {
+            Actor copy = (Actor) clone();
+            copy.store = newStore;
+            copy.slot = newSlot;
+            copy.field = newField;
+            return copy;
+        }
+        catch(CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Record that the store has moved the animal's state.
+     * @param newStore The store now holding the state.
+     * @param newSlot The slot of the state in that store.
+     */
+    void moveTo(ActorStore newStore, int newSlot)
+    {
+        store = newStore;
+        slot = newSlot;
+    }
 }
@@ -0,0 +1,249 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * The state of a population of actors, kept as a structure of
+ * arrays: one primitive array per property, indexed by slot. The
+ * Actor objects remain as views of their slot, holding only their
+ * settings and the behaviour of their species.
+ * 
+ * Dead actors are removed by moving the last actor into their slot,
+ * so removal costs the same however many actors die in a step.
+ * Stores are also used as reusable birth buffers, whose actors are
+ * moved into the main store at the end of a step.
+ */
+public class ActorStore
+{
+    // The initial number of slots.
+    private static final int INITIAL_CAPACITY = 64;
+    // The packed location of an actor which is not in the field.
+    public static final long NOWHERE = Location.pack(-1, -1);
+
+    // The number of slots in use.
+    private int size;
+    // The actor views, indexed by slot.
+    private Actor[] views;
+    // The species id of each actor.
+    private byte[] species;
+    // The age of each actor.
+    private int[] age;
+    // The food level of each actor which eats.
+    private int[] foodLevel;
+    // Whether each actor is female.
+    private boolean[] female;
+    // The packed location of each actor, or NOWHERE once it has died.
+    private long[] location;
+
+    /**
+     * Create an empty store.
+     */
+    public ActorStore()
+    {
+        views = new Actor[INITIAL_CAPACITY];
+        species = new byte[INITIAL_CAPACITY];
+        age = new int[INITIAL_CAPACITY];
+        foodLevel = new int[INITIAL_CAPACITY];
+        female = new boolean[INITIAL_CAPACITY];
+        location = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add an actor to the store. Its properties start at zero,
+     * and it is not in the field.
+     * @param view The actor.
+     * @param speciesId The species of the actor.
+     * @return The slot of the actor.
+     */
+    public int add(Actor view, byte speciesId)
+    {
+        if(size == views.length) {
+            grow();
+        }
+        int slot = size++;
+        views[slot] = view;
+        species[slot] = speciesId;
+        age[slot] = 0;
+        foodLevel[slot] = 0;
+        female[slot] = false;
+        location[slot] = NOWHERE;
+        return slot;
+    }
+
+    /**
+     * Remove the dead actors. The last actors are moved into the
+     * freed slots, so the order of the actors is not kept.
+     */
+    public void removeDead()
+    {
+        int slot = 0;
+        while(slot < size) {
+            if(location[slot] == NOWHERE) {
+                size--;
+                if(slot < size) {
+                    moveSlot(size, slot);
+                }
+                views[size] = null;
+            }
+            else {
+                slot++;
+            }
+        }
+    }
+
+    /**
+     * Move the living actors of another store into this one,
+     * leaving the other store empty.
+     * @param births The store to take the actors from.
+     */
+    public void adopt(ActorStore births)
+    {
+        for(int from = 0; from < births.size; from++) {
+            if(births.location[from] != NOWHERE) {
+                if(size == views.length) {
+                    grow();
+                }
+                int to = size++;
+                Actor view = births.views[from];
+                views[to] = view;
+                species[to] = births.species[from];
+                age[to] = births.age[from];
+                foodLevel[to] = births.foodLevel[from];
+                female[to] = births.female[from];
+                location[to] = births.location[from];
+                view.moveTo(this, to);
+            }
+        }
+        births.clear();
+    }
+
+    /**
+     * Copy the actors into a forked field. Each actor is copied,
+     * with its state, and takes the place of the original in the
+     * field, which must hold the originals at their locations.
+     * @param field The forked field.
+     * @return A store holding the copies, in the same order.
+     */
+    public ActorStore copy(Field field)
+    {
+        ActorStore copy = new ActorStore();
+        copy.size = size;
+        copy.views = new Actor[views.length];
+        copy.species = species.clone();
+        copy.age = age.clone();
+        copy.foodLevel = foodLevel.clone();
+        copy.female = female.clone();
+        copy.location = location.clone();
+        for(int slot = 0; slot < size; slot++) {
+            Actor view = views[slot].copyTo(copy, slot, field);
+            copy.views[slot] = view;
+            if(location[slot] != NOWHERE) {
+                field.replace(Location.rowOf(location[slot]), Location.colOf(location[slot]), view);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Remove all actors.
+     */
+    public void clear()
+    {
+        Arrays.fill(views, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return The number of actors in the store.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param slot The slot of an actor.
+     * @return The actor in that slot.
+     */
+    public Actor get(int slot)
+    {
+        return views[slot];
+    }
+
+    public byte getSpecies(int slot)
+    {
+        return species[slot];
+    }
+
+    public int getAge(int slot)
+    {
+        return age[slot];
+    }
+
+    public void setAge(int slot, int value)
+    {
+        age[slot] = value;
+    }
+
+    public int getFoodLevel(int slot)
+    {
+        return foodLevel[slot];
+    }
+
+    public void setFoodLevel(int slot, int value)
+    {
+        foodLevel[slot] = value;
+    }
+
+    public boolean isFemale(int slot)
+    {
+        return female[slot];
+    }
+
+    public void setFemale(int slot, boolean value)
+    {
+        female[slot] = value;
+    }
+
+    /**
+     * @param slot The slot of an actor.
+     * @return The packed location of the actor, or NOWHERE.
+     */
+    public long getLocation(int slot)
+    {
+        return location[slot];
+    }
+
+    public void setLocation(int slot, long value)
+    {
+        location[slot] = value;
+    }
+
+    /**
+     * Move the actor in one slot into another, overwriting it.
+     */
+    private void moveSlot(int from, int to)
+    {
+        Actor view = views[from];
+        views[to] = view;
+        species[to] = species[from];
+        age[to] = age[from];
+        foodLevel[to] = foodLevel[from];
+        female[to] = female[from];
+        location[to] = location[from];
+        view.moveTo(this, to);
+    }
+
+    /**
+     * Double the number of slots.
+     */
+    private void grow()
+    {
+        int capacity = views.length * 2;
+        views = Arrays.copyOf(views, capacity);
+        species = Arrays.copyOf(species, capacity);
+        age = Arrays.copyOf(age, capacity);
+        foodLevel = Arrays.copyOf(foodLevel, capacity);
+        female = Arrays.copyOf(female, capacity);
+        location = Arrays.copyOf(location, capacity);
+    }
+}
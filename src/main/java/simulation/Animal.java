@@ -1,5 +1,4 @@
 package simulation;
-import java.util.Random;
 
 /**
  * A class representing shared characteristics of animals.
@@ -11,22 +10,23 @@ public abstract class Animal extends Actor
 {
     private int breed_age;
     private int max_litter;
-    private boolean gender;
-    private static final Random rand = Randomizer.getRandom();
     
     
     /**
      * Create a new animal at location in field.
      * 
+     * @param context The working state of the current step.
      * @param field The field currently occupied.
      * @param location The location within the field.
      */
-    public Animal(int max_age, int breed_age, int max_litter, boolean randomAge, Field field, Location location)
+    public Animal(int max_age, int breed_age, int max_litter, boolean randomAge, StepContext context, Field field, Location location)
     {
-        super(max_age, randomAge, field, location);
+        super(max_age, randomAge, context, field, location);
         this.breed_age = breed_age;
         this.max_litter = max_litter;
-        gender = rand.nextBoolean();
+        boolean female = context.getRandom().nextBoolean();
+        getStore().setFemale(getSlot(), female);
+        getField().setFemale(getRow(), getCol(), female);
     }
     
     protected int getBreedAge()
@@ -51,7 +51,7 @@ public abstract class Animal extends Actor
     
     protected boolean isFemale()
     {
-    	return gender;
+    	return getStore().isFemale(getSlot());
     }
 
     /**
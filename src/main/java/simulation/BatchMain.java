@@ -0,0 +1,768 @@
+package simulation;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Runs one simulation from the command line, without a display, for
+ * batch runs on servers. Everything the GUI asks for can be given as
+ * an option; the others keep their defaults. The counts of every step
+ * can be streamed to CSV or binary files, the run recorded for replay,
+ * and checkpoints saved along the way. At the end the final counts and
+ * the speed of the run are printed.
+ *
+ * A run is stepped by a ParallelEngine, so a seed gives the same run
+ * for any number of threads. The phased, sparse, off-heap, mapped and
+ * area modes need the serial engine, which draws its random numbers
+ * in another order; their runs differ from other runs of the seed.
+ *
+ * A run may be resumed from one of its checkpoints, which holds the
+ * size, seed, settings and engine of the run; resuming and running the
+ * remaining steps gives the same outcome as the run without the stop.
+ *
+ * Instead of one run, many replicates of a run can be made, each with
+ * its own seed, and the statistics of their counts written out; or a
+ * run can be made for each of many combinations of settings, on a grid
+ * or a Latin hypercube sample, and a summary of each written out.
+ *
+ * A run can also be forked into branches at a step, each continuing
+ * with its own settings, so that the steps before the fork are only
+ * simulated once.
+ *
+ * The exit status is 0 after a run, 1 for bad options and 2 if a file
+ * cannot be read or written.
+ */
+public class BatchMain
+{
+    // The number of steps run unless another is chosen.
+    private static final int DEFAULT_STEPS = 500;
+    // The number of steps between keyframes of a run log.
+    private static final int DEFAULT_KEYFRAMES = 100;
+    // The number of steps between checkpoints.
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    private static final String USAGE =
+        "Usage: java simulation.BatchMain [options]\n"
+        + "  --width N              width of the field (" + SimulationEngine.DEFAULT_WIDTH + ")\n"
+        + "  --depth N              depth of the field (" + SimulationEngine.DEFAULT_DEPTH + ")\n"
+        + "  --steps N              steps to run, fewer if the run stops being viable ("
+        + DEFAULT_STEPS + ")\n"
+        + "  --seed N               seed of the random stream (random)\n"
+        + "  --threads N            threads stepping the field; a seed gives the\n"
+        + "                         same run for any number (1)\n"
+        + "  --tile N               tile size, at least 2 (" + ParallelEngine.DEFAULT_TILE_SIZE + ")\n"
+        + "The next five modes step the field on one thread, in another order,\n"
+        + "so their runs differ from other runs of the same seed:\n"
+        + "  --phased               let the actors act species by species\n"
+        + "  --sparse               keep only the occupied chunks of the field, for\n"
+        + "                         very large worlds\n"
+        + "  --off-heap             keep the grid outside the heap\n"
+        + "  --mapped FILE          keep the grid in a file mapped into memory, left\n"
+        + "                         holding the final grid\n"
+        + "  --area DxW             populate only D rows by W columns at the centre\n"
+        + "                         of the field (the whole field)\n"
+        + "  --create SPECIES=P     probability of creating SPECIES at a location,\n"
+        + "                         such as Rabbit=0.08 (repeatable)\n"
+        + "  --set SETTING=N        a setting of a species, such as Fox.maxAge=90;\n"
+        + "                         settings are maxAge, breedAge, maxLitter and\n"
+        + "                         huntAge (repeatable)\n"
+        + "  --csv FILE             write the counts of every step as CSV\n"
+        + "  --binary FILE          write the counts of every step in binary\n"
+        + "  --log FILE             record the run for replay\n"
+        + "  --keyframes N          steps between keyframes of the log (" + DEFAULT_KEYFRAMES + ")\n"
+        + "  --checkpoint FILE      save checkpoints of the run\n"
+        + "  --checkpoint-every N   steps between checkpoints (" + DEFAULT_CHECKPOINT_INTERVAL + ")\n"
+        + "  --resume FILE          continue a run from a checkpoint for --steps more\n"
+        + "                         steps; its field, seed, settings and modes are\n"
+        + "                         those of the checkpoint\n"
+        + "  --replicates N         make N runs, each with a seed derived from --seed,\n"
+        + "                         --threads at a time, all for the full --steps;\n"
+        + "                         --csv writes the mean, variance and quantiles\n"
+        + "                         of the counts at every step\n"
+        + "  --sweep SETTING=VALUES a setting to sweep, such as Fox.maxAge=60,90,120\n"
+        + "                         or Fox.maxAge=60:120:10 (MIN:MAX:STEP); a run is\n"
+        + "                         made for every combination of the values, on\n"
+        + "                         --threads threads, and --csv, which must be\n"
+        + "                         given, writes a line for each (repeatable)\n"
+        + "  --samples N            sweep N configurations of a Latin hypercube\n"
+        + "                         sample of the ranges instead (MIN:MAX)\n"
+        + "  --branch SETTINGS      fork a branch of the run, which changes the\n"
+        + "                         settings given, such as Fox.maxAge=90,Fox.breedAge=8,\n"
+        + "                         or none for \"-\"; the branches run for --steps on\n"
+        + "                         --threads threads, and --csv writes the counts of\n"
+        + "                         every step of each (repeatable)\n"
+        + "  --fork-at N            run N steps before forking the branches (0)\n"
+        + "  --jmx                  register the step metrics with JMX\n"
+        + "  --help                 show this message\n";
+
+    // The options, with their defaults.
+    private int width = SimulationEngine.DEFAULT_WIDTH;
+    private int depth = SimulationEngine.DEFAULT_DEPTH;
+    private int steps = DEFAULT_STEPS;
+    private long seed = System.nanoTime();
+    private int threads = 1;
+    private int tileSize = ParallelEngine.DEFAULT_TILE_SIZE;
+    private boolean phased;
+    private boolean sparse;
+    private boolean offHeap;
+    private Path mapped;
+    private int areaDepth, areaWidth;
+    private double[] creationProbability = new double[Species.COUNT];
+    private List<Dictionary> dict = Dictionary.defaults();
+    private Path csv, binary, log, checkpoint, resume;
+    private int replicates;
+    private List<SweepParameter> sweep = new ArrayList<SweepParameter>();
+    private int samples;
+    private List<String> branches = new ArrayList<String>();
+    private int forkAt;
+    // The options given.
+    private Set<String> given = new HashSet<String>();
+    private int keyframes = DEFAULT_KEYFRAMES;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private boolean jmx;
+    private boolean help;
+
+    /**
+     * Create a batch run with the default options.
+     */
+    private BatchMain()
+    {
+        // -1 keeps the default of the engine.
+        Arrays.fill(creationProbability, -1);
+    }
+
+    /**
+     * Run a simulation as the options say.
+     * @param args The options.
+     */
+    public static void main(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        BatchMain batch = new BatchMain();
+        try {
+            batch.parse(args);
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+        if(batch.help) {
+            System.out.print(USAGE);
+            return;
+        }
+        try {
+            batch.run();
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        catch(IOException e) {
+            System.err.println("Cannot read or write a file: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Read the options.
+     * @param args The options.
+     * @throws IllegalArgumentException If an option is not understood.
+     */
+    private void parse(String[] args)
+    {
+        for(int i = 0; i < args.length; i++) {
+            String option = args[i];
+            given.add(option);
+            if(option.equals("--help")) {
+                help = true;
+                continue;
+            }
+            if(option.equals("--phased")) {
+                phased = true;
+                continue;
+            }
+            if(option.equals("--sparse")) {
+                sparse = true;
+                continue;
+            }
+            if(option.equals("--off-heap")) {
+                offHeap = true;
+                continue;
+            }
+            if(option.equals("--jmx")) {
+                jmx = true;
+                continue;
+            }
+            if(i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch(option) {
+                case "--width":
+                    width = positive(option, value);
+                    break;
+                case "--depth":
+                    depth = positive(option, value);
+                    break;
+                case "--steps":
+                    steps = number(option, value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = positive(option, value);
+                    break;
+                case "--tile":
+                    tileSize = positive(option, value);
+                    if(tileSize < 2) {
+                        throw new IllegalArgumentException("Tiles must be at least 2 wide: " + value);
+                    }
+                    break;
+                case "--mapped":
+                    mapped = Paths.get(value);
+                    break;
+                case "--area":
+                    int times = value.indexOf('x');
+                    if(times < 0) {
+                        throw new IllegalArgumentException("Expected DxW: " + value);
+                    }
+                    areaDepth = positive(option, value.substring(0, times));
+                    areaWidth = positive(option, value.substring(times + 1));
+                    break;
+                case "--create":
+                    int equals = value.indexOf('=');
+                    if(equals < 0) {
+                        throw new IllegalArgumentException("Expected SPECIES=P: " + value);
+                    }
+                    double probability = Double.parseDouble(value.substring(equals + 1));
+                    if(!(probability >= 0 && probability <= 1)) {
+                        throw new IllegalArgumentException("Not a probability: " + value);
+                    }
+                    creationProbability[Species.named(value.substring(0, equals))] = probability;
+                    break;
+                case "--set":
+                    applySetting(value, dict);
+                    break;
+                case "--csv":
+                    csv = Paths.get(value);
+                    break;
+                case "--binary":
+                    binary = Paths.get(value);
+                    break;
+                case "--log":
+                    log = Paths.get(value);
+                    break;
+                case "--keyframes":
+                    keyframes = positive(option, value);
+                    break;
+                case "--checkpoint":
+                    checkpoint = Paths.get(value);
+                    break;
+                case "--checkpoint-every":
+                    checkpointInterval = positive(option, value);
+                    break;
+                case "--resume":
+                    resume = Paths.get(value);
+                    break;
+                case "--replicates":
+                    replicates = positive(option, value);
+                    break;
+                case "--sweep":
+                    sweep.add(sweepParameter(value));
+                    break;
+                case "--samples":
+                    samples = positive(option, value);
+                    break;
+                case "--branch":
+                    // Check the settings now, to report mistakes before running.
+                    applySettings(value, Dictionary.defaults());
+                    branches.add(value);
+                    break;
+                case "--fork-at":
+                    forkAt = number(option, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if(resume != null) {
+            exclude("--resume takes the field, seed, settings and modes from the checkpoint",
+                    "--width", "--depth", "--seed", "--tile", "--phased", "--sparse", "--off-heap",
+                    "--mapped", "--area", "--create", "--set", "--replicates", "--sweep");
+        }
+        if(replicates > 0) {
+            exclude("--replicates makes serial runs of the whole field, with counts only",
+                    "--tile", "--phased", "--sparse", "--off-heap", "--mapped", "--area", "--create",
+                    "--binary", "--log", "--keyframes", "--checkpoint", "--checkpoint-every", "--jmx",
+                    "--branch");
+            // Every replicate runs on one thread.
+            return;
+        }
+        if(given.contains("--fork-at") && branches.isEmpty()) {
+            throw new IllegalArgumentException("--fork-at needs a --branch");
+        }
+        if(given.contains("--samples") && sweep.isEmpty()) {
+            throw new IllegalArgumentException("--samples needs a --sweep");
+        }
+        if(!sweep.isEmpty()) {
+            exclude("--sweep makes serial runs of the whole field, summarised in a table",
+                    "--tile", "--phased", "--sparse", "--off-heap", "--mapped", "--area", "--create",
+                    "--binary", "--log", "--keyframes", "--checkpoint", "--checkpoint-every", "--jmx",
+                    "--replicates", "--branch");
+            if(csv == null) {
+                throw new IllegalArgumentException("--sweep writes its table to the file given by --csv");
+            }
+            // Every configuration runs on one thread.
+            return;
+        }
+        if(!branches.isEmpty()) {
+            exclude("--branch writes only the counts of the branches",
+                    "--binary", "--log", "--keyframes", "--checkpoint", "--checkpoint-every", "--jmx");
+        }
+        if((sparse ? 1 : 0) + (offHeap ? 1 : 0) + (mapped != null ? 1 : 0) > 1) {
+            throw new IllegalArgumentException("Choose one of --sparse, --off-heap and --mapped");
+        }
+        // The branches of a serial run are run on the threads.
+        if(isSerial() && threads > 1 && branches.isEmpty()) {
+            throw new IllegalArgumentException("--phased, --sparse, --off-heap, --mapped and --area "
+                                               + "run on one thread only");
+        }
+        if(areaDepth > depth || areaWidth > width) {
+            throw new IllegalArgumentException("Area larger than the field: " + areaDepth + "x" + areaWidth);
+        }
+    }
+
+    /**
+     * Reject options which cannot be given with another.
+     * @param reason Why they cannot.
+     * @param options The options.
+     * @throws IllegalArgumentException If one of the options was given.
+     */
+    private void exclude(String reason, String... options)
+    {
+        for(String option : options) {
+            if(given.contains(option)) {
+                throw new IllegalArgumentException(reason + ": " + option);
+            }
+        }
+    }
+
+    /**
+     * @return true if the options need the serial engine.
+     */
+    private boolean isSerial()
+    {
+        return phased || sparse || offHeap || mapped != null || areaDepth > 0;
+    }
+
+    /**
+     * Run the simulation, writing its outputs, and print a summary.
+     * @throws IOException If the checkpoint cannot be read or an output written.
+     */
+    private void run() throws IOException
+    {
+        if(replicates > 0) {
+            runReplicates();
+            return;
+        }
+        if(!sweep.isEmpty()) {
+            runSweep();
+            return;
+        }
+        SimulationEngine engine = createEngine();
+        if(!branches.isEmpty()) {
+            runBranches(engine);
+            return;
+        }
+        // Keep only a little history in memory; the sinks keep the rest.
+        engine.setStatsWindow(1);
+
+        List<Closeable> outputs = new ArrayList<Closeable>();
+        try {
+            if(csv != null) {
+                outputs.add(observe(engine, new CsvStatsSink(csv, engine.getAnimalClasses())));
+            }
+            if(binary != null) {
+                outputs.add(observe(engine, new BinaryStatsSink(binary, engine.getAnimalClasses())));
+            }
+            if(log != null) {
+                outputs.add(observe(engine, new RunLogWriter(engine, log, keyframes)));
+            }
+            if(checkpoint != null) {
+                outputs.add(observe(engine, new CheckpointWriter(engine, checkpoint, checkpointInterval)));
+            }
+            if(jmx) {
+                engine.getMetrics().register("BatchMain");
+            }
+
+            long start = System.nanoTime();
+            int run = engine.run(steps);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if(engine.getField() instanceof OffHeapField) {
+                ((OffHeapField) engine.getField()).force();
+            }
+
+            // The seed of a serial run is not kept in its checkpoints.
+            boolean seeded = resume == null || engine instanceof ParallelEngine;
+            System.out.println((seeded ? "seed=" + seed + " " : "") + "steps=" + run + counts(engine));
+            System.out.println(String.format(Locale.ROOT, "%.3f s, %.1f steps/s", seconds, run / seconds));
+        }
+        finally {
+            IOException failure = null;
+            for(Closeable output : outputs) {
+                try {
+                    output.close();
+                }
+                catch(IOException e) {
+                    failure = e;
+                }
+            }
+            if(engine instanceof ParallelEngine) {
+                ((ParallelEngine) engine).shutdown();
+            }
+            if(failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Create the engine the options ask for, or restore it from the
+     * checkpoint, and populate it.
+     * @return The engine, ready to run.
+     * @throws IOException If the checkpoint cannot be read or the mapped
+     *         file created.
+     */
+    private SimulationEngine createEngine() throws IOException
+    {
+        SimulationEngine engine;
+        if(resume != null) {
+            engine = Checkpoint.restore(resume, threads);
+            if(engine instanceof ParallelEngine) {
+                seed = ((ParallelEngine) engine).getSeed();
+            }
+            else if(threads > 1) {
+                throw new IllegalArgumentException("--threads: the checkpoint is of a run on one thread only");
+            }
+            System.out.println("resumed at step " + engine.getStep() + " from " + resume);
+        }
+        else if(!isSerial()) {
+            engine = new ParallelEngine(dict, depth, width, seed, threads, tileSize);
+        }
+        else {
+            Field field;
+            if(sparse) {
+                field = new SparseField(depth, width);
+            }
+            else if(offHeap) {
+                field = new OffHeapField(depth, width);
+            }
+            else if(mapped != null) {
+                field = new OffHeapField(depth, width, mapped);
+            }
+            else {
+                field = new FlatField(depth, width);
+            }
+            if(areaDepth == 0) {
+                engine = new SimulationEngine(dict, field, new Randomizer(seed));
+            }
+            else {
+                Location corner = new Location((depth - areaDepth) / 2, (width - areaWidth) / 2);
+                engine = new SimulationEngine(dict, field, new Randomizer(seed), corner, areaDepth, areaWidth);
+            }
+            engine.setSpeciesPhased(phased);
+        }
+        boolean custom = false;
+        for(byte species = Species.RABBIT; species <= Species.HUNTER; species++) {
+            if(creationProbability[species] >= 0) {
+                engine.setCreationProbability(species, creationProbability[species]);
+                custom = true;
+            }
+        }
+        if(custom) {
+            // Populate again from the start of the stream, as though
+            // the engine had been created with these probabilities.
+            engine.getRandomizer().reseed(seed);
+            engine.reset();
+        }
+        return engine;
+    }
+
+    /**
+     * Run the replicates, write their statistics, and print the mean
+     * final counts.
+     * @throws IOException If the statistics cannot be written.
+     */
+    private void runReplicates() throws IOException
+    {
+        ReplicateRunner runner = new ReplicateRunner(dict, depth, width, seed, threads);
+        long start = System.nanoTime();
+        ReplicateStats stats;
+        try {
+            stats = runner.run(replicates, steps);
+        }
+        catch(InterruptedException e) {
+            throw new IllegalStateException("Interrupted", e);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if(csv != null) {
+            stats.writeTable(csv);
+        }
+
+        StringBuilder means = new StringBuilder();
+        for(Class animalClass : stats.getAnimalClasses()) {
+            means.append(String.format(Locale.ROOT, " %s=%.1f", animalClass.getSimpleName(),
+                                       stats.getMean(animalClass, steps)));
+        }
+        System.out.println("seed=" + seed + " replicates=" + replicates + " steps=" + steps
+                           + " mean" + means);
+        System.out.println(String.format(Locale.ROOT, "%.3f s, %.1f replicates/s",
+                                         seconds, replicates / seconds));
+    }
+
+    /**
+     * Run the configurations of the sweep, write their results, and
+     * print how many let every species survive.
+     * @throws IOException If the results cannot be written.
+     */
+    private void runSweep() throws IOException
+    {
+        ParameterSweep parameterSweep = new ParameterSweep(dict, depth, width, seed);
+        for(SweepParameter parameter : sweep) {
+            parameterSweep.addParameter(parameter);
+        }
+        int[][] configurations;
+        if(samples > 0) {
+            configurations = parameterSweep.latinHypercube(samples, new Randomizer(seed));
+        }
+        else {
+            configurations = parameterSweep.grid();
+        }
+        long start = System.nanoTime();
+        SweepResult[] results = parameterSweep.run(configurations, steps, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        parameterSweep.writeTable(results, csv);
+
+        int coexisting = 0;
+        for(SweepResult result : results) {
+            boolean survived = true;
+            for(int i = 0; i < Species.animalClasses().size(); i++) {
+                survived &= result.getExtinctionStep(i) < 0;
+            }
+            if(survived) {
+                coexisting++;
+            }
+        }
+        System.out.println("seed=" + seed + " configurations=" + results.length + " steps=" + steps
+                           + " coexisting=" + coexisting);
+        System.out.println(String.format(Locale.ROOT, "%.3f s, %.1f configurations/s",
+                                         seconds, results.length / seconds));
+    }
+
+    /**
+     * Run the trunk to the fork, then fork the branches from it and
+     * run them, write their counts, and print their final counts.
+     * @param trunk The simulation to branch from.
+     * @throws IOException If the counts cannot be written.
+     */
+    private void runBranches(SimulationEngine trunk) throws IOException
+    {
+        try {
+            trunk.run(forkAt);
+            System.out.println("seed=" + seed + " fork at step " + trunk.getStep() + counts(trunk));
+            BranchRunner runner = new BranchRunner(trunk, threads);
+            for(int b = 0; b < branches.size(); b++) {
+                List<Dictionary> settings = Dictionary.copy(trunk.getSettings());
+                applySettings(branches.get(b), settings);
+                runner.addBranch(settings, new Randomizer(trunk.getRandomizer().deriveSeed(b)));
+            }
+            long start = System.nanoTime();
+            try {
+                runner.run(steps);
+            }
+            catch(InterruptedException e) {
+                throw new IllegalStateException("Interrupted", e);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if(csv != null) {
+                writeBranches(runner.getBranches(), csv);
+            }
+
+            for(int b = 0; b < branches.size(); b++) {
+                SimulationEngine branch = runner.getBranches().get(b);
+                System.out.println("branch " + (b + 1) + " " + branches.get(b) + " steps="
+                                   + (branch.getStep() - trunk.getStep()) + counts(branch));
+            }
+            System.out.println(String.format(Locale.ROOT, "%.3f s, %.1f branches/s",
+                                             seconds, branches.size() / seconds));
+        }
+        finally {
+            if(trunk instanceof ParallelEngine) {
+                ((ParallelEngine) trunk).shutdown();
+            }
+        }
+    }
+
+    /**
+     * Write the counts of every step of the branches as comma
+     * separated values, one line per branch and step, the steps before
+     * the fork included.
+     * @param runs The branches.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeBranches(List<SimulationEngine> runs, Path file) throws IOException
+    {
+        Class[] classes = Species.animalClasses().toArray(new Class[0]);
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        try {
+            out.print("branch,step");
+            for(Class animalClass : classes) {
+                out.print("," + animalClass.getSimpleName());
+            }
+            out.println();
+            for(int b = 0; b < runs.size(); b++) {
+                SimulatorStats stats = runs.get(b).getStatistics();
+                for(int step = stats.getStart(); step < stats.getSize(); step++) {
+                    out.print((b + 1) + "," + step);
+                    for(Class animalClass : classes) {
+                        out.print("," + stats.getCounts(animalClass).get(step));
+                    }
+                    out.println();
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        if(out.checkError()) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * @return The number of each species in the field of a simulation,
+     *         as " Rabbit=N Fox=N ...".
+     */
+    private static String counts(SimulationEngine engine)
+    {
+        int[] population = new int[Species.COUNT];
+        engine.getField().population(population);
+        StringBuilder counts = new StringBuilder();
+        for(byte species = Species.RABBIT; species <= Species.HUNTER; species++) {
+            counts.append(' ').append(Species.classOf(species).getSimpleName()).append('=')
+                  .append(population[species]);
+        }
+        return counts.toString();
+    }
+
+    /**
+     * Change the settings of a --branch option, given as "-" for none
+     * or as SETTING=N[,SETTING=N...].
+     * @param settings The settings to change.
+     * @param dict The settings of each kind of actor, to change.
+     */
+    private static void applySettings(String settings, List<Dictionary> dict)
+    {
+        if(!settings.equals("-")) {
+            for(String setting : settings.split(",")) {
+                applySetting(setting, dict);
+            }
+        }
+    }
+
+    /**
+     * Change a setting given as SETTING=N.
+     * @param setting The setting.
+     * @param dict The settings of each kind of actor, to change.
+     */
+    private static void applySetting(String setting, List<Dictionary> dict)
+    {
+        int equals = setting.indexOf('=');
+        if(equals < 0) {
+            throw new IllegalArgumentException("Expected SETTING=N: " + setting);
+        }
+        int value = number("--set", setting.substring(equals + 1));
+        SweepParameter.named(setting.substring(0, equals), new int[] { value }).apply(dict, value);
+    }
+
+    /**
+     * Register an output with the engine.
+     * @return The output.
+     */
+    private static <T extends SimulationObserver & Closeable> T observe(SimulationEngine engine, T output)
+    {
+        engine.addObserver(output);
+        return output;
+    }
+
+    /**
+     * @return The setting and values of a --sweep option, given as
+     *         SETTING=V1,V2,... or SETTING=MIN:MAX[:STEP].
+     */
+    private static SweepParameter sweepParameter(String value)
+    {
+        int equals = value.indexOf('=');
+        if(equals < 0) {
+            throw new IllegalArgumentException("Expected SETTING=VALUES: " + value);
+        }
+        String name = value.substring(0, equals);
+        String[] parts;
+        if(value.indexOf(':', equals) >= 0) {
+            parts = value.substring(equals + 1).split(":");
+            if(parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("Expected MIN:MAX or MIN:MAX:STEP: " + value);
+            }
+            int step = parts.length == 3 ? positive("--sweep", parts[2]) : 1;
+            return SweepParameter.named(name, number("--sweep", parts[0]), number("--sweep", parts[1]), step);
+        }
+        parts = value.substring(equals + 1).split(",");
+        int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++) {
+            values[i] = number("--sweep", parts[i]);
+        }
+        return SweepParameter.named(name, values);
+    }
+
+    /**
+     * @return The value of an option, which must not be negative.
+     */
+    private static int number(String option, String value)
+    {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + option + ": " + value);
+        }
+        if(number < 0) {
+            throw new IllegalArgumentException("Negative value for " + option + ": " + value);
+        }
+        return number;
+    }
+
+    /**
+     * @return The value of an option, which must be positive.
+     */
+    private static int positive(String option, String value)
+    {
+        int number = number(option, value);
+        if(number == 0) {
+            throw new IllegalArgumentException("Zero value for " + option);
+        }
+        return number;
+    }
+}
@@ -0,0 +1,105 @@
+package simulation;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * A stats sink writing a compact binary file, organised in columns.
+ * All numbers are big-endian. The file starts with a header:
+ * <pre>
+ *   int   MAGIC ("PPST")
+ *   int   VERSION
+ *   int   the number of columns
+ *   then for each column, its name: a short length and UTF-8 bytes
+ * </pre>
+ * followed by blocks of up to BLOCK_ROWS steps, each
+ * <pre>
+ *   int   the number of rows n
+ *   then for each column in turn, n ints
+ * </pre>
+ * The first column is the step number, the others are the count of
+ * each species. A block is written once it is full, or when the rows
+ * held back are handed to the writer, so a reader following the file
+ * sees whole blocks only.
+ */
+public class BinaryStatsSink extends StatsSink
+{
+    // Identifies the file format.
+    public static final int MAGIC = 0x50505354;
+    // The version of the file format.
+    public static final int VERSION = 1;
+    // The most rows in a block.
+    public static final int BLOCK_ROWS = 1024;
+
+    // The rows of the block being collected, by column.
+    private final int[][] block;
+    // The number of rows collected.
+    private int rows;
+
+    /**
+     * Create a sink writing to a file, replacing any existing one.
+     * @param file The file to write.
+     * @param animalClasses The classes of animal to record, in the
+     *                      order of the columns.
+     * @throws IOException If the file cannot be opened.
+     */
+    public BinaryStatsSink(Path file, Collection<Class> animalClasses) throws IOException
+    {
+        super(file, animalClasses);
+        block = new int[animalClasses.size() + 1][BLOCK_ROWS];
+    }
+
+    /**
+     * Write the header.
+     * @param names The names of the columns.
+     */
+    protected void writeHeader(String[] names)
+    {
+        ByteBuffer buffer = reserve(12);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(names.length);
+        for(int i = 0; i < names.length; i++) {
+            byte[] bytes = names[i].getBytes(StandardCharsets.UTF_8);
+            buffer = reserve(2 + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Collect the counts of one step, writing the block if it is full.
+     * @param step The step.
+     * @param counts The count of each species, in column order.
+     */
+    protected void writeRow(int step, int[] counts)
+    {
+        block[0][rows] = step;
+        for(int i = 0; i < counts.length; i++) {
+            block[i + 1][rows] = counts[i];
+        }
+        rows++;
+        if(rows == BLOCK_ROWS) {
+            endBlock();
+        }
+    }
+
+    /**
+     * Write the rows collected so far as a block.
+     */
+    protected void endBlock()
+    {
+        if(rows == 0) {
+            return;
+        }
+        ByteBuffer buffer = reserve(4 + block.length * rows * 4);
+        buffer.putInt(rows);
+        for(int column = 0; column < block.length; column++) {
+            buffer.asIntBuffer().put(block[column], 0, rows);
+            buffer.position(buffer.position() + rows * 4);
+        }
+        rows = 0;
+    }
+}
@@ -0,0 +1,99 @@
+package simulation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs what-if experiments: branches forked from one simulation at
+ * the same step, each continuing with its own settings or random
+ * stream, so the steps before the fork are only simulated once.
+ *
+ * The branches are forked on the caller's thread, between steps of
+ * the trunk, and then run on a fixed number of threads. With a trunk
+ * in a ChunkedField the branches share every part of the field which
+ * they have not changed.
+ */
+public class BranchRunner
+{
+    // The simulation branched from.
+    private final SimulationEngine trunk;
+    // The number of branches run at once.
+    private final int threads;
+    // The branches, in the order they were added.
+    private final List<SimulationEngine> branches;
+
+    /**
+     * Create a runner for branches of a simulation.
+     * @param trunk The simulation to branch from.
+     * @param threads The number of branches to run at once.
+     */
+    public BranchRunner(SimulationEngine trunk, int threads)
+    {
+        if(threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.trunk = trunk;
+        this.threads = threads;
+        branches = new ArrayList<SimulationEngine>();
+    }
+
+    /**
+     * Fork a branch from the trunk in its current state.
+     * @param dict The settings of each kind of actor in the branch.
+     * @param rand The random stream of the branch.
+     * @return The branch.
+     */
+    public SimulationEngine addBranch(List<Dictionary> dict, Randomizer rand)
+    {
+        SimulationEngine branch = trunk.fork(dict, rand);
+        branches.add(branch);
+        return branch;
+    }
+
+    /**
+     * @return The branches, in the order they were added.
+     */
+    public List<SimulationEngine> getBranches()
+    {
+        return Collections.unmodifiableList(branches);
+    }
+
+    /**
+     * Run every branch for the given number of steps. A branch stops
+     * early if it ceases to be viable.
+     * @param steps The number of steps to run each branch for.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void run(final int steps) throws InterruptedException
+    {
+        if(branches.isEmpty()) {
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(final SimulationEngine branch : branches) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    branch.run(steps);
+                    return null;
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, branches.size()));
+        try {
+            for(Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("A branch failed", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
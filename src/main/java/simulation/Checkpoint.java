@@ -0,0 +1,433 @@
+package simulation;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Saves the full state of a simulation to a binary file, and restores
+ * it, so that a long run can be stopped and continued later with
+ * exactly the same outcome as if it had never stopped. All numbers are
+ * big-endian. The file holds:
+ * <pre>
+ *   int   MAGIC ("PPCK")
+ *   int   VERSION
+ *   int   depth, width
+ *   byte  the engine: 0 serial, 1 parallel
+ *   byte  1 if the actors act species by species, else 0
+ *   byte  the field: 0 flat, 1 object, 2 chunked, 3 sparse, 4 off-heap
+ *   int   the tile size of a parallel engine, else 0
+ *   long  the seed of a parallel engine, else 0
+ *   int   the top row, left column, depth and width of the part of
+ *         the field populated at a reset
+ *   int   the step reached
+ *   int   the number of settings, then 4 ints for each: maximum age,
+ *         breeding age, maximum litter size and hunting age
+ *   the state of the random stream (Randomizer.STATE_BYTES)
+ *   int   the number of actors n, then by column:
+ *         n species bytes, n ages, n food levels,
+ *         n female flags (bytes) and n packed locations (longs)
+ *   int   the number of animal classes, the number of steps counted
+ *         and the first step kept, then the counts kept of each class
+ * </pre>
+ * The actors are saved in the order in which they act, which is part
+ * of what makes the continuation exact.
+ *
+ * The steps of a ParallelEngine draw from streams derived from its
+ * seed and the step, so a checkpoint of one may only be restored into
+ * a ParallelEngine of the same seed and tile size. A restore checks
+ * that the engine is of the kind saved; the number of threads may
+ * differ, as it does not change the run. A field mapped from a file
+ * is saved as off-heap, and restored into direct buffers.
+ */
+public class Checkpoint
+{
+    // Identifies the file format.
+    public static final int MAGIC = 0x5050434B;
+    // The version of the file format.
+    public static final int VERSION = 2;
+
+    // The kinds of engine.
+    private static final byte SERIAL = 0;
+    private static final byte PARALLEL = 1;
+    // The kinds of field, in the order of their codes.
+    private static final Class[] BACKENDS = {
+        FlatField.class, ObjectField.class, ChunkedField.class, SparseField.class, OffHeapField.class
+    };
+
+    /**
+     * Capture the state of a simulation into a buffer. This must be
+     * called on the thread running the simulation, between steps.
+     * @param engine The simulation.
+     * @return The state, ready to be written.
+     */
+    public static ByteBuffer capture(SimulationEngine engine)
+    {
+        ActorStore actors = engine.getActors();
+        SimulatorStats statistics = engine.getStatistics();
+        List<Dictionary> dict = engine.getSettings();
+        Set<Class> animalClasses = Species.animalClasses();
+        int n = actors.size();
+        int start = statistics.getStart();
+        int kept = statistics.getSize() - start;
+        int[] area = engine.getPopulatedArea();
+        ByteBuffer buffer = ByteBuffer.allocate(24 + 31 + dict.size() * 16
+                                                + Randomizer.STATE_BYTES
+                                                + 4 + n * 18
+                                                + 12 + animalClasses.size() * kept * 4);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(engine.getField().getDepth());
+        buffer.putInt(engine.getField().getWidth());
+        if(engine instanceof ParallelEngine) {
+            ParallelEngine parallel = (ParallelEngine) engine;
+            buffer.put(PARALLEL);
+            buffer.put((byte) 0);
+            buffer.put(backendOf(engine.getField()));
+            buffer.putInt(parallel.getTileSize());
+            buffer.putLong(parallel.getSeed());
+        }
+        else {
+            buffer.put(SERIAL);
+            buffer.put(engine.isSpeciesPhased() ? (byte) 1 : (byte) 0);
+            buffer.put(backendOf(engine.getField()));
+            buffer.putInt(0);
+            buffer.putLong(0);
+        }
+        for(int i = 0; i < area.length; i++) {
+            buffer.putInt(area[i]);
+        }
+        buffer.putInt(engine.getStep());
+        buffer.putInt(dict.size());
+        for(Dictionary d : dict) {
+            buffer.putInt(d.getMaxAge());
+            buffer.putInt(d.getBreedAge());
+            buffer.putInt(d.getMaxLitter());
+            buffer.putInt(d.getHuntAge());
+        }
+        engine.getRandomizer().writeState(buffer);
+        buffer.putInt(n);
+        for(int i = 0; i < n; i++) {
+            buffer.put(actors.getSpecies(i));
+        }
+        for(int i = 0; i < n; i++) {
+            buffer.putInt(actors.getAge(i));
+        }
+        for(int i = 0; i < n; i++) {
+            buffer.putInt(actors.getFoodLevel(i));
+        }
+        for(int i = 0; i < n; i++) {
+            buffer.put(actors.isFemale(i) ? (byte) 1 : (byte) 0);
+        }
+        for(int i = 0; i < n; i++) {
+            buffer.putLong(actors.getLocation(i));
+        }
+        buffer.putInt(animalClasses.size());
+        buffer.putInt(statistics.getSize());
+        buffer.putInt(start);
+        for(Class animalClass : animalClasses) {
+            IntSeries series = statistics.getCounts(animalClass);
+            for(int i = start; i < statistics.getSize(); i++) {
+                buffer.putInt(series.get(i));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Save the state of a simulation to a file, replacing any
+     * existing one.
+     * @param engine The simulation, between steps.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(SimulationEngine engine, Path file) throws IOException
+    {
+        write(capture(engine), file);
+    }
+
+    /**
+     * Write a captured state to a file, replacing any existing one.
+     * @param state The state, as returned by capture.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(ByteBuffer state, Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.WRITE);
+        try {
+            while(state.hasRemaining()) {
+                channel.write(state);
+            }
+            channel.force(false);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Restore a simulation saved to a file, with the settings it
+     * was saved with, into an engine and field of the kind saved.
+     * A ParallelEngine is given one thread.
+     * @param file The file to read.
+     * @return The simulation, ready to continue.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public static SimulationEngine restore(Path file) throws IOException
+    {
+        return restore(file, 1);
+    }
+
+    /**
+     * Restore a simulation saved to a file, with the settings it
+     * was saved with, into an engine and field of the kind saved.
+     * A ParallelEngine must be shut down when no longer needed.
+     * @param file The file to read.
+     * @param threads The number of threads of a ParallelEngine.
+     * @return The simulation, ready to continue.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public static SimulationEngine restore(Path file, int threads) throws IOException
+    {
+        ByteBuffer buffer = map(file);
+        int depth = buffer.getInt();
+        int width = buffer.getInt();
+        byte kind = buffer.get();
+        boolean phased = buffer.get() != 0;
+        byte backend = buffer.get();
+        int tileSize = buffer.getInt();
+        long seed = buffer.getLong();
+        int[] area = new int[4];
+        for(int i = 0; i < area.length; i++) {
+            area[i] = buffer.getInt();
+        }
+        buffer.getInt();
+        List<Dictionary> dict = new ArrayList<Dictionary>();
+        for(int i = buffer.getInt(); i > 0; i--) {
+            Dictionary d = new Dictionary();
+            d.setMaxAge(buffer.getInt());
+            d.setBreedAge(buffer.getInt());
+            d.setMaxLitter(buffer.getInt());
+            d.setHuntAge(buffer.getInt());
+            dict.add(d);
+        }
+        SimulationEngine engine;
+        if(kind == PARALLEL) {
+            engine = new ParallelEngine(dict, depth, width, seed, threads, tileSize);
+        }
+        else {
+            engine = new SimulationEngine(dict, newField(backend, depth, width), new Randomizer(),
+                                          new Location(area[0], area[1]), area[2], area[3]);
+            engine.setSpeciesPhased(phased);
+        }
+        try {
+            restore(file, engine);
+        }
+        catch(IOException | RuntimeException e) {
+            if(engine instanceof ParallelEngine) {
+                ((ParallelEngine) engine).shutdown();
+            }
+            throw e;
+        }
+        return engine;
+    }
+
+    /**
+     * Restore a simulation saved to a file into an existing engine,
+     * replacing its state. The engine keeps its own settings and
+     * observers; the observers are not told of the restore.
+     * @param file The file to read.
+     * @param engine The simulation, of the kind saved and with a field
+     *               of the size and kind saved.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     * @throws IllegalArgumentException If the engine is not of the kind saved.
+     */
+    public static void restore(Path file, SimulationEngine engine) throws IOException
+    {
+        ByteBuffer buffer = map(file);
+        Field field = engine.getField();
+        int depth = buffer.getInt();
+        int width = buffer.getInt();
+        if(depth != field.getDepth() || width != field.getWidth()) {
+            throw new IllegalArgumentException("Checkpoint of a " + depth + "x" + width
+                                               + " field cannot be restored into a "
+                                               + field.getDepth() + "x" + field.getWidth() + " field");
+        }
+        byte kind = buffer.get();
+        boolean phased = buffer.get() != 0;
+        byte backend = buffer.get();
+        int tileSize = buffer.getInt();
+        long seed = buffer.getLong();
+        if(kind == PARALLEL) {
+            if(!(engine instanceof ParallelEngine)) {
+                throw new IllegalArgumentException("Checkpoint of a parallel run cannot be restored "
+                                                   + "into a serial engine");
+            }
+            ParallelEngine parallel = (ParallelEngine) engine;
+            if(tileSize != parallel.getTileSize() || seed != parallel.getSeed()) {
+                throw new IllegalArgumentException("Checkpoint of a parallel run with tile size " + tileSize
+                                                   + " and seed " + seed + " cannot be restored into one"
+                                                   + " with tile size " + parallel.getTileSize()
+                                                   + " and seed " + parallel.getSeed());
+            }
+        }
+        else if(engine instanceof ParallelEngine) {
+            throw new IllegalArgumentException("Checkpoint of a serial run cannot be restored "
+                                               + "into a parallel engine");
+        }
+        else if(phased != engine.isSpeciesPhased()) {
+            throw new IllegalArgumentException("Checkpoint of a " + (phased ? "phased" : "mixed")
+                                               + " run cannot be restored into a "
+                                               + (phased ? "mixed" : "phased") + " engine");
+        }
+        if(backend != backendOf(field)) {
+            throw new IllegalArgumentException("Checkpoint of a " + backendName(backend)
+                                               + " cannot be restored into a "
+                                               + field.getClass().getSimpleName());
+        }
+        int[] area = engine.getPopulatedArea();
+        for(int i = 0; i < area.length; i++) {
+            if(buffer.getInt() != area[i]) {
+                throw new IllegalArgumentException("Checkpoint populates another part of the field");
+            }
+        }
+        int step = buffer.getInt();
+        // The settings are the engine's own.
+        int settings = buffer.getInt();
+        buffer.position(buffer.position() + settings * 16);
+        int stateAt = buffer.position();
+        buffer.position(stateAt + Randomizer.STATE_BYTES);
+
+        // Rebuild the actors in order. They draw from a scratch stream,
+        // and their drawn state is then overwritten with the saved one.
+        int n = buffer.getInt();
+        int ageAt = buffer.position() + n;
+        int foodAt = ageAt + n * 4;
+        int femaleAt = foodAt + n * 4;
+        int locationAt = femaleAt + n;
+        ActorStore actors = engine.getActors();
+        field.clear();
+        actors.clear();
+        StepContext scratch = new StepContext(new Randomizer(0));
+        ActorStore births = scratch.getBirths();
+        for(int i = 0; i < n; i++) {
+            long location = buffer.getLong(locationAt + i * 8);
+            engine.createActor(buffer.get(), false, scratch,
+                               new Location(Location.rowOf(location), Location.colOf(location)));
+            births.setAge(i, buffer.getInt(ageAt + i * 4));
+            births.setFoodLevel(i, buffer.getInt(foodAt + i * 4));
+            boolean female = buffer.get(femaleAt + i) != 0;
+            births.setFemale(i, female);
+            if(births.get(i) instanceof Animal) {
+                field.setFemale(Location.rowOf(location), Location.colOf(location), female);
+            }
+        }
+        actors.adopt(births);
+        buffer.position(locationAt + n * 8);
+
+        Set<Class> animalClasses = Species.animalClasses();
+        if(buffer.getInt() != animalClasses.size()) {
+            throw new IOException("Checkpoint counts different animal classes: " + file);
+        }
+        int size = buffer.getInt();
+        int start = buffer.getInt();
+        SimulatorStats statistics = new SimulatorStats(animalClasses);
+        statistics.skipTo(start);
+        int kept = size - start;
+        int[] counts = new int[animalClasses.size()];
+        int countsAt = buffer.position();
+        for(int i = 0; i < kept; i++) {
+            for(int j = 0; j < counts.length; j++) {
+                counts[j] = buffer.getInt(countsAt + (j * kept + i) * 4);
+            }
+            statistics.addCounts(counts);
+        }
+
+        buffer.position(stateAt);
+        engine.getRandomizer().readState(buffer);
+        engine.resume(step, statistics);
+    }
+
+    /**
+     * @return The code of the kind of a field.
+     */
+    private static byte backendOf(Field field)
+    {
+        for(byte backend = 0; backend < BACKENDS.length; backend++) {
+            if(BACKENDS[backend] == field.getClass()) {
+                return backend;
+            }
+        }
+        throw new IllegalArgumentException("Cannot save a " + field.getClass().getSimpleName());
+    }
+
+    /**
+     * @return The name of the kind of field with a code.
+     */
+    private static String backendName(byte backend)
+    {
+        return backend >= 0 && backend < BACKENDS.length ? BACKENDS[backend].getSimpleName()
+                                                        : "field of kind " + backend;
+    }
+
+    /**
+     * Create an empty field of the kind with a code.
+     * @param backend The code of the kind of field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @return The field.
+     * @throws IOException If the code is of no kind of field.
+     */
+    private static Field newField(byte backend, int depth, int width) throws IOException
+    {
+        switch(backend) {
+            case 0:
+                return new FlatField(depth, width);
+            case 1:
+                return new ObjectField(depth, width);
+            case 2:
+                return new ChunkedField(depth, width);
+            case 3:
+                return new SparseField(depth, width);
+            case 4:
+                return new OffHeapField(depth, width);
+            default:
+                throw new IOException("Checkpoint of an unknown kind of field: " + backend);
+        }
+    }
+
+    /**
+     * Map a checkpoint file into memory and check its header.
+     * @param file The file to read.
+     * @return The contents, positioned after the version.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    private static ByteBuffer map(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            channel.close();
+        }
+        if(buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint: " + file);
+        }
+        int version = buffer.getInt();
+        if(version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+        }
+        return buffer;
+    }
+}
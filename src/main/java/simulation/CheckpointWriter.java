@@ -0,0 +1,146 @@
+package simulation;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An observer which saves a checkpoint of a running simulation every
+ * so many steps. The state is captured between steps, on the thread
+ * running the simulation, and written by a background thread, so the
+ * simulation does not wait for the disk. Each checkpoint is written
+ * to a temporary file which then replaces the previous one, so the
+ * file always holds a whole checkpoint, even if the run is killed
+ * while writing. If the previous checkpoint is still being written
+ * when the next one is due, the next one is skipped.
+ *
+ * Register the writer with SimulationEngine.addObserver, and close
+ * it when the run is over.
+ */
+public class CheckpointWriter implements SimulationObserver, Closeable
+{
+    // The simulation saved.
+    private final SimulationEngine engine;
+    // The checkpoint file, and the file written before replacing it.
+    private final Path file, temporary;
+    // The number of steps between checkpoints.
+    private final int interval;
+    // The thread writing the checkpoints.
+    private final ExecutorService writer;
+    // The checkpoint being written, if any.
+    private Future<?> pending;
+    // The number of checkpoints skipped.
+    private int skipped;
+
+    /**
+     * Create a writer saving checkpoints of a simulation.
+     * @param engine The simulation to save.
+     * @param file The file to save to, replaced by every checkpoint.
+     * @param interval The number of steps between checkpoints.
+     */
+    public CheckpointWriter(SimulationEngine engine, Path file, int interval)
+    {
+        if(interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        this.engine = engine;
+        this.file = file;
+        this.interval = interval;
+        temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Capture a checkpoint if one is due.
+     */
+    public void stepCompleted(int step, Field field, FieldStats stats)
+    {
+        if(step == 0 || step % interval != 0) {
+            return;
+        }
+        if(pending != null && !pending.isDone()) {
+            skipped++;
+            return;
+        }
+        check();
+        final ByteBuffer state = Checkpoint.capture(engine);
+        pending = writer.submit(new Callable<Void>() {
+            public Void call() throws IOException {
+                Checkpoint.write(state, temporary);
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return The number of checkpoints skipped because the previous
+     *         one was still being written.
+     */
+    public int getSkipped()
+    {
+        return skipped;
+    }
+
+    /**
+     * Wait for the checkpoint being written, and stop the writer.
+     * @throws IOException If a checkpoint could not be written.
+     */
+    public void close() throws IOException
+    {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            check();
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Report the failure of the last checkpoint written, if any.
+     */
+    private void check()
+    {
+        if(pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw new UncheckedIOException("Checkpoint failed: " + file,
+                                               (IOException) e.getCause());
+            }
+            throw new IllegalStateException("Checkpoint failed: " + file, e.getCause());
+        }
+        pending = null;
+    }
+}
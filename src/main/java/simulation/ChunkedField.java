@@ -0,0 +1,303 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * A field which keeps its grid in square chunks, shared copy-on-write
+ * between the field and the fields forked from it. Forking copies no
+ * cells: both fields keep reading the same chunks, and a chunk is only
+ * copied by the first field to change it. Branches of a simulation
+ * forked from a common state therefore share every chunk that neither
+ * of them has touched since.
+ *
+ * Like FlatField, each chunk holds the id of each occupant and its
+ * species. Each field has its own table of occupants, in which the
+ * ids of a forked field start out the same as in the original.
+ *
+ * The field keeps no occupancy bitboards. They cover the whole area,
+ * so a fork would have to copy them, undoing the sharing of chunks;
+ * instead the neighbourhood queries read the neighbours one by one,
+ * which makes them slower than in a FlatField.
+ *
+ * Chunks are never changed once shared, so forked fields may be used
+ * by different threads; a single field must only be changed by one
+ * thread at a time.
+ */
+public class ChunkedField extends Field
+{
+    // The side of a chunk is 2^CHUNK_BITS positions.
+    private static final int CHUNK_BITS = 4;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // A chunk with nothing in it, shared by all fields.
+    private static final Chunk EMPTY = new Chunk(null);
+
+    // The number of chunks across the field.
+    private final int chunksAcross;
+    // The chunks, row by row.
+    private final Chunk[] chunks;
+    // The occupants, addressed by id.
+    private final Occupants occupants;
+    // Marks the chunks this field may change without copying them.
+    private Object owner;
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ChunkedField(int depth, int width)
+    {
+        this(depth, width, new Occupants());
+        Arrays.fill(chunks, EMPTY);
+    }
+
+    /**
+     * Represent a field of the given dimensions, with its table of
+     * occupants and no chunks yet.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param occupants The table of occupants.
+     */
+    private ChunkedField(int depth, int width, Occupants occupants)
+    {
+        super(depth, width, false);
+        chunksAcross = (width + CHUNK_MASK) >> CHUNK_BITS;
+        chunks = new Chunk[chunksAcross * ((depth + CHUNK_MASK) >> CHUNK_BITS)];
+        this.occupants = occupants;
+        owner = new Object();
+    }
+
+    /**
+     * Empty the field.
+     */
+    public void clear()
+    {
+        Arrays.fill(chunks, EMPTY);
+        occupants.clear();
+        emptied();
+    }
+
+    /**
+     * Clear the given location.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void clear(int row, int col)
+    {
+        Chunk chunk = chunkAt(row, col);
+        int cell = cell(row, col);
+        if(chunk.ids[cell] != 0) {
+            chunk = writable(row, col);
+            occupants.remove(chunk.ids[cell] - 1);
+            removed(chunk.species[cell], row, col);
+            chunk.ids[cell] = 0;
+            chunk.species[cell] = Species.EMPTY;
+        }
+    }
+
+    /**
+     * Place an animal at the given location.
+     * If there is already an animal at the location it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void place(Object animal, int row, int col)
+    {
+        clear(row, col);
+        if(animal != null) {
+            Chunk chunk = writable(row, col);
+            int cell = cell(row, col);
+            chunk.ids[cell] = occupants.add(animal) + 1;
+            chunk.species[cell] = Species.of(animal);
+            added(chunk.species[cell], row, col, animal);
+        }
+    }
+
+    /**
+     * Move whatever is at one location to another. Anything
+     * already at the destination will be lost. The occupant
+     * keeps its id.
+     * @param fromRow Row coordinate of the current location.
+     * @param fromCol Column coordinate of the current location.
+     * @param toRow Row coordinate of the new location.
+     * @param toCol Column coordinate of the new location.
+     */
+    public void move(int fromRow, int fromCol, int toRow, int toCol)
+    {
+        if(fromRow != toRow || fromCol != toCol) {
+            clear(toRow, toCol);
+            if(chunkAt(fromRow, fromCol).ids[cell(fromRow, fromCol)] == 0) {
+                // Nothing to move; the destination is left empty.
+                return;
+            }
+            Chunk from = writable(fromRow, fromCol);
+            Chunk to = writable(toRow, toCol);
+            int fromCell = cell(fromRow, fromCol);
+            int toCell = cell(toRow, toCol);
+            to.ids[toCell] = from.ids[fromCell];
+            to.species[toCell] = from.species[fromCell];
+            from.ids[fromCell] = 0;
+            from.species[fromCell] = Species.EMPTY;
+            moved(to.species[toCell], fromRow, fromCol, toRow, toCol);
+        }
+    }
+
+    /**
+     * Return the animal at the given location, if any.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The animal at the given location, or null if there is none.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        int id = chunkAt(row, col).ids[cell(row, col)];
+        return id == 0 ? null : occupants.get(id - 1);
+    }
+
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        return chunkAt(row, col).species[cell(row, col)];
+    }
+
+    /**
+     * Replace the occupant of a location by another of the same
+     * species. The occupant id is kept, so no chunk is copied.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     * @param occupant The new occupant.
+     */
+    public void replace(int row, int col, Object occupant)
+    {
+        occupants.set(chunkAt(row, col).ids[cell(row, col)] - 1, occupant);
+    }
+
+    /**
+     * Create a copy of this field sharing all of its chunks. From now
+     * on, either field copies a chunk before changing it.
+     * @return The copy, holding the same occupants under the same ids.
+     */
+    public Field fork()
+    {
+        ChunkedField copy = new ChunkedField(getDepth(), getWidth(), occupants.copy());
+        System.arraycopy(chunks, 0, copy.chunks, 0, chunks.length);
+        copy.copyPopulation(this);
+        // The chunks are now shared, so this field must copy them too.
+        owner = new Object();
+        return copy;
+    }
+
+    /**
+     * @return The number of chunks this field still shares with
+     *         other fields, including the chunks it has never filled.
+     */
+    public int getSharedChunks()
+    {
+        int shared = 0;
+        for(Chunk chunk : chunks) {
+            if(chunk.owner != owner) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Copy the species grid of the field, row by row.
+     * @param species Receives the species id of each position, at
+     *                index row * width + col.
+     */
+    public void copySpecies(byte[] species)
+    {
+        int width = getWidth();
+        for(int row = 0; row < getDepth(); row++) {
+            for(int col = 0; col < width; col += CHUNK_SIZE) {
+                System.arraycopy(chunkAt(row, col).species, cell(row, col),
+                                 species, row * width + col, Math.min(CHUNK_SIZE, width - col));
+            }
+        }
+    }
+
+    /**
+     * Return the chunk holding a position, for reading only.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The chunk.
+     */
+    private Chunk chunkAt(int row, int col)
+    {
+        return chunks[(row >> CHUNK_BITS) * chunksAcross + (col >> CHUNK_BITS)];
+    }
+
+    /**
+     * Return the chunk holding a position, copying it first if it is
+     * shared, so that it can be changed.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The chunk, owned by this field.
+     */
+    private Chunk writable(int row, int col)
+    {
+        int index = (row >> CHUNK_BITS) * chunksAcross + (col >> CHUNK_BITS);
+        Chunk chunk = chunks[index];
+        if(chunk.owner != owner) {
+            chunk = new Chunk(owner, chunk);
+            chunks[index] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Return the position of a cell within its chunk.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The index of the cell in the arrays of its chunk.
+     */
+    private static int cell(int row, int col)
+    {
+        return (row & CHUNK_MASK) << CHUNK_BITS | col & CHUNK_MASK;
+    }
+
+    /**
+     * The cells of a square of the field, row by row.
+     */
+    private static class Chunk
+    {
+        // The field which may change the chunk, if any.
+        final Object owner;
+        // The occupant id + 1 of each cell; zero marks an empty one.
+        final int[] ids;
+        // The species id of each cell.
+        final byte[] species;
+
+        /**
+         * Create an empty chunk.
+         * @param owner The field which may change it.
+         */
+        Chunk(Object owner)
+        {
+            this.owner = owner;
+            ids = new int[CHUNK_SIZE * CHUNK_SIZE];
+            species = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        }
+
+        /**
+         * Create a copy of a chunk.
+         * @param owner The field which may change the copy.
+         * @param chunk The chunk to copy.
+         */
+        Chunk(Object owner, Chunk chunk)
+        {
+            this.owner = owner;
+            ids = chunk.ids.clone();
+            species = chunk.species.clone();
+        }
+    }
+}
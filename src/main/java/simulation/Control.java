@@ -5,12 +5,15 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JTextField;
@@ -46,6 +49,7 @@ public class Control implements ActionListener{
 	private JTextField litter3;
 	private JTextField steps1;
 	private JButton enter;
+	private JButton resume;
 	private JButton clear;
 	private JButton quit;
 	
@@ -57,31 +61,7 @@ public class Control implements ActionListener{
 	
 	private void newDict()
 	{
-		for(int i = 0; i < 4; i++) {
-			Dictionary d = new Dictionary();
-			switch (i) {
-				case RAB: // Rabbit
-					d.setBreedAge(4);
-					d.setMaxAge(40);
-					d.setMaxLitter(4);
-					break;
-				case FOX: // Fox
-					d.setBreedAge(15);
-					d.setMaxAge(90);
-					d.setMaxLitter(3);
-					break;
-				case COY: // Coyote
-					d.setBreedAge(15);
-					d.setMaxAge(70);
-					d.setMaxLitter(5);
-					break;
-				case HUN: // Hunter
-					d.setHuntAge(18);
-					d.setMaxAge(120);
-					break;
-			}
-			dict.add(d);
-		}
+		dict.addAll(Dictionary.defaults());
 	}
 	
 	private void makeFrame()
@@ -253,13 +233,16 @@ public class Control implements ActionListener{
 		
 		enter = new JButton("Run Simulation");
 		enter.addActionListener(this);
+		resume = new JButton("Resume Checkpoint");
+		resume.addActionListener(this);
 		clear = new JButton("Clear All");
 		clear.addActionListener(this);
 		quit = new JButton("Quit Simulation");
 		quit.addActionListener(this);
 		
-		p6 = new JPanel(new GridLayout(3, 1));
+		p6 = new JPanel(new GridLayout(4, 1));
 		p6.add(enter);
+		p6.add(resume);
 		p6.add(clear);
 		p6.add(quit);
 		
@@ -309,6 +292,31 @@ public class Control implements ActionListener{
 			history.add(s);
 			s.simulate(steps);
 		}
+		else if (event.getSource() == resume)
+		{
+			// Continue a saved run for the chosen number of steps, with its own settings.
+			JFileChooser chooser = new JFileChooser();
+			if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION)
+			{
+				return;
+			}
+			steps = (Integer.parseInt(steps1.getText()));
+			SimulationEngine engine;
+			try
+			{
+				engine = Checkpoint.restore(chooser.getSelectedFile().toPath(),
+				                            Runtime.getRuntime().availableProcessors());
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				JOptionPane.showMessageDialog(frame, "Cannot resume: " + e.getMessage(),
+				                              "Resume Checkpoint", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			s = new Simulator(engine);
+			history.add(s);
+			s.simulate(steps);
+		}
 	}
 	
 	public List<Dictionary> getCollection()
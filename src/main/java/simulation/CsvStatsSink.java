@@ -0,0 +1,92 @@
+package simulation;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * A stats sink writing comma separated values: a header line with
+ * the column names, then one line per step with the step number and
+ * the count of each species.
+ */
+public class CsvStatsSink extends StatsSink
+{
+    // The most bytes an int takes in decimal, with its sign.
+    private static final int MAX_DIGITS = 11;
+
+    // The number of columns.
+    private final int columns;
+    // Scratch space for the digits of a number, last digit first.
+    private final byte[] digits;
+
+    /**
+     * Create a sink writing to a file, replacing any existing one.
+     * @param file The file to write.
+     * @param animalClasses The classes of animal to record, in the
+     *                      order of the columns.
+     * @throws IOException If the file cannot be opened.
+     */
+    public CsvStatsSink(Path file, Collection<Class> animalClasses) throws IOException
+    {
+        super(file, animalClasses);
+        columns = animalClasses.size() + 1;
+        digits = new byte[MAX_DIGITS];
+    }
+
+    /**
+     * Write the header line.
+     * @param names The names of the columns.
+     */
+    protected void writeHeader(String[] names)
+    {
+        StringBuilder line = new StringBuilder();
+        for(int i = 0; i < names.length; i++) {
+            if(i > 0) {
+                line.append(',');
+            }
+            line.append(names[i]);
+        }
+        line.append('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        reserve(bytes.length).put(bytes);
+    }
+
+    /**
+     * Write the line of one step.
+     * @param step The step.
+     * @param counts The count of each species, in column order.
+     */
+    protected void writeRow(int step, int[] counts)
+    {
+        ByteBuffer buffer = reserve(columns * (MAX_DIGITS + 1));
+        putInt(buffer, step);
+        for(int i = 0; i < counts.length; i++) {
+            buffer.put((byte) ',');
+            putInt(buffer, counts[i]);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Write a number in decimal, without creating a string.
+     * @param buffer The buffer to write to.
+     * @param value The number.
+     */
+    private void putInt(ByteBuffer buffer, int value)
+    {
+        long rest = value;
+        if(rest < 0) {
+            buffer.put((byte) '-');
+            rest = -rest;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while(rest > 0);
+        while(length > 0) {
+            buffer.put(digits[--length]);
+        }
+    }
+}
@@ -1,4 +1,6 @@
 package simulation;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Dictionary {
 	private int MAX_AGE;
@@ -45,4 +47,49 @@ public class Dictionary {
     {
     	MAX_LITTER_SIZE = z;
     }
+    
+    /**
+     * Create the default settings of each kind of actor, in the
+     * order rabbit, fox, coyote, hunter.
+     * @return The settings.
+     */
+    public static List<Dictionary> defaults()
+    {
+    	List<Dictionary> dict = new ArrayList<Dictionary>();
+    	int[][] settings = {
+    		// breeding age, max age, max litter, hunt age
+    		{ 4, 40, 4, 0 },
+    		{ 15, 90, 3, 0 },
+    		{ 15, 70, 5, 0 },
+    		{ 0, 120, 0, 18 },
+    	};
+    	for(int[] s : settings) {
+    		Dictionary d = new Dictionary();
+    		d.setBreedAge(s[0]);
+    		d.setMaxAge(s[1]);
+    		d.setMaxLitter(s[2]);
+    		d.setHuntAge(s[3]);
+    		dict.add(d);
+    	}
+    	return dict;
+    }
+    
+    /**
+     * Copy the settings of each kind of actor.
+     * @param dict The settings.
+     * @return A copy, which can be changed without changing them.
+     */
+    public static List<Dictionary> copy(List<Dictionary> dict)
+    {
+    	List<Dictionary> copy = new ArrayList<Dictionary>();
+    	for(Dictionary d : dict) {
+    		Dictionary c = new Dictionary();
+    		c.setBreedAge(d.getBreedAge());
+    		c.setMaxAge(d.getMaxAge());
+    		c.setMaxLitter(d.getMaxLitter());
+    		c.setHuntAge(d.getHuntAge());
+    		copy.add(c);
+    	}
+    	return copy;
+    }
 }
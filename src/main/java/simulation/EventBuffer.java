@@ -0,0 +1,227 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * The events of one step, in the order in which they happened:
+ * births, deaths, moves and predation. Recording is off unless a
+ * RunLogWriter turns it on, in which case every StepContext collects
+ * the events of the actors acting in it.
+ *
+ * Each event is kept as a few ints: its type and species, then the
+ * row and column of the location it happened at, then, for a move,
+ * the row and column moved to.
+ */
+public class EventBuffer
+{
+    // An actor was born, or placed in the field.
+    public static final int BIRTH = 0;
+    // An actor died of old age, hunger or overcrowding.
+    public static final int DEATH = 1;
+    // An actor moved.
+    public static final int MOVE = 2;
+    // An actor was eaten, or shot, by another.
+    public static final int EAT = 3;
+
+    // The number of ints kept for each event.
+    private static final int STRIDE = 5;
+
+    // Whether events are being recorded.
+    private boolean enabled;
+    // The events, STRIDE ints each.
+    private int[] data;
+    // The number of events.
+    private int size;
+
+    /**
+     * Create an empty buffer, not recording.
+     */
+    public EventBuffer()
+    {
+        data = new int[64 * STRIDE];
+    }
+
+    /**
+     * @return Whether events are being recorded.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turn recording on or off.
+     * @param enabled Whether to record events.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Record the birth of an actor.
+     * @param species The species of the actor.
+     * @param row The row it was born at.
+     * @param col The column it was born at.
+     */
+    public void born(byte species, int row, int col)
+    {
+        if(enabled) {
+            add(BIRTH | species << 2, row, col, 0, 0);
+        }
+    }
+
+    /**
+     * Record a predator eating its prey, which is removed.
+     * @param predator The species of the predator.
+     * @param prey The species of the prey.
+     * @param row The row of the prey.
+     * @param col The column of the prey.
+     */
+    public void eaten(byte predator, byte prey, int row, int col)
+    {
+        if(enabled) {
+            add(EAT | prey << 2 | predator << 5, row, col, 0, 0);
+        }
+    }
+
+    /**
+     * Record what became of an actor while it acted: a move, a death,
+     * or nothing. Births and predation are recorded as they happen.
+     * @param species The species of the actor.
+     * @param from Its packed location before it acted, or
+     *             ActorStore.NOWHERE if it was already dead.
+     * @param to Its packed location after it acted, or
+     *           ActorStore.NOWHERE if it died.
+     */
+    public void acted(byte species, long from, long to)
+    {
+        if(!enabled || from == to || from == ActorStore.NOWHERE) {
+            return;
+        }
+        if(to == ActorStore.NOWHERE) {
+            add(DEATH | species << 2, Location.rowOf(from), Location.colOf(from), 0, 0);
+        }
+        else {
+            add(MOVE | species << 2, Location.rowOf(from), Location.colOf(from),
+                Location.rowOf(to), Location.colOf(to));
+        }
+    }
+
+    /**
+     * Add the events of another buffer after these, leaving the
+     * other buffer empty.
+     * @param other The buffer to take the events from.
+     */
+    public void append(EventBuffer other)
+    {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size * STRIDE, other.size * STRIDE);
+        size += other.size;
+        other.clear();
+    }
+
+    /**
+     * Forget all events.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * @return The number of events.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The type of an event: BIRTH, DEATH, MOVE or EAT.
+     */
+    public int getType(int event)
+    {
+        return data[event * STRIDE] & 3;
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The species of the actor the event happened to.
+     */
+    public byte getSpecies(int event)
+    {
+        return (byte) (data[event * STRIDE] >> 2 & 7);
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The species of the predator, for an EAT event.
+     */
+    public byte getPredator(int event)
+    {
+        return (byte) (data[event * STRIDE] >> 5 & 7);
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The row the event happened at.
+     */
+    public int getRow(int event)
+    {
+        return data[event * STRIDE + 1];
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The column the event happened at.
+     */
+    public int getCol(int event)
+    {
+        return data[event * STRIDE + 2];
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The row moved to, for a MOVE event.
+     */
+    public int getToRow(int event)
+    {
+        return data[event * STRIDE + 3];
+    }
+
+    /**
+     * @param event The index of the event.
+     * @return The column moved to, for a MOVE event.
+     */
+    public int getToCol(int event)
+    {
+        return data[event * STRIDE + 4];
+    }
+
+    /**
+     * Add an event.
+     */
+    private void add(int header, int row, int col, int toRow, int toCol)
+    {
+        ensureCapacity(size + 1);
+        int i = size * STRIDE;
+        data[i] = header;
+        data[i + 1] = row;
+        data[i + 2] = col;
+        data[i + 3] = toRow;
+        data[i + 4] = toCol;
+        size++;
+    }
+
+    /**
+     * Make room for a number of events.
+     * @param events The number of events to hold.
+     */
+    private void ensureCapacity(int events)
+    {
+        if(events * STRIDE > data.length) {
+            data = Arrays.copyOf(data, Math.max(events * STRIDE, data.length * 2));
+        }
+    }
+}
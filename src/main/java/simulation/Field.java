@@ -4,23 +4,37 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
+ * How the occupants are stored is left to subclasses; this class
+ * provides the location based methods and the neighbourhood queries.
+ * It also keeps a running count of the occupants of each species,
+ * and their Occupancy bitboards, which subclasses update as they
+ * place, move and clear occupants. The neighbourhood counts and
+ * the searches for free locations and mates read the bitboards.
+ * Fields too large for bitboards over their whole area, such as a
+ * SparseField, have none, and those queries look at the neighbours
+ * one by one instead.
  * 
  * @author David J. Barnes and Michael K������lling
  * @version 2011.07.31
  */
-public class Field
+public abstract class Field
 {
     // A random number generator for providing random locations.
     private static final Random rand = Randomizer.getRandom();
     
     // The depth and width of the field.
     private int depth, width;
-    // Storage for the animals.
-    private Object[][] field;
+    // The number of occupants of each species, indexed by species id.
+    // Adders, as the parallel engine places and clears concurrently.
+    private final LongAdder[] population;
+    // The locations of the occupants of each species and sex, or
+    // null if the field keeps no bitboards.
+    private final Occupancy occupancy;
 
     /**
      * Represent a field of the given dimensions.
@@ -28,10 +42,27 @@ public class Field
      * @param width The width of the field.
      */
     public Field(int depth, int width)
+    {
+        this(depth, width, true);
+    }
+
+    /**
+     * Represent a field of the given dimensions, with or without
+     * occupancy bitboards.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param bitboards Whether to keep bitboards, which take a few
+     *                  bytes for every location.
+     */
+    protected Field(int depth, int width, boolean bitboards)
     {
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
+        population = new LongAdder[Species.COUNT];
+        for(int species = 0; species < Species.COUNT; species++) {
+            population[species] = new LongAdder();
+        }
+        occupancy = bitboards ? new Occupancy(depth, width) : null;
     }
     
     /**
@@ -41,7 +72,7 @@ public class Field
     {
         for(int row = 0; row < depth; row++) {
             for(int col = 0; col < width; col++) {
-                field[row][col] = null;
+                clear(row, col);
             }
         }
     }
@@ -52,9 +83,16 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        clear(location.getRow(), location.getCol());
     }
     
+    /**
+     * Clear the given location.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    abstract public void clear(int row, int col);
+    
     /**
      * Place an animal at the given location.
      * If there is already an animal at the location it will
@@ -63,10 +101,7 @@ public class Field
      * @param row Row coordinate of the location.
      * @param col Column coordinate of the location.
      */
-    public void place(Object animal, int row, int col)
-    {
-        place(animal, new Location(row, col));
-    }
+    abstract public void place(Object animal, int row, int col);
     
     /**
      * Place an animal at the given location.
@@ -77,7 +112,22 @@ public class Field
      */
     public void place(Object animal, Location location)
     {
-        field[location.getRow()][location.getCol()] = animal;
+        place(animal, location.getRow(), location.getCol());
+    }
+    
+    /**
+     * Move whatever is at one location to another. Anything
+     * already at the destination will be lost.
+     * @param fromRow Row coordinate of the current location.
+     * @param fromCol Column coordinate of the current location.
+     * @param toRow Row coordinate of the new location.
+     * @param toCol Column coordinate of the new location.
+     */
+    public void move(int fromRow, int fromCol, int toRow, int toCol)
+    {
+        Object animal = getObjectAt(fromRow, fromCol);
+        clear(fromRow, fromCol);
+        place(animal, toRow, toCol);
     }
     
     /**
@@ -96,9 +146,205 @@ public class Field
      * @param col The desired column.
      * @return The animal at the given location, or null if there is none.
      */
-    public Object getObjectAt(int row, int col)
+    abstract public Object getObjectAt(int row, int col);
+    
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    abstract public byte getSpeciesAt(int row, int col);
+    
+    /**
+     * Replace the occupant of a location by another of the same
+     * species, such as its copy in a forked field. The population
+     * is unchanged.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     * @param occupant The new occupant.
+     */
+    abstract public void replace(int row, int col, Object occupant);
+    
+    /**
+     * Create an independent copy of this field, which still holds
+     * the same occupants. Changes to either field do not affect the
+     * other; the occupants of the copy are usually then replaced by
+     * copies of their own.
+     * @return The copy.
+     */
+    abstract public Field fork();
+    
+    /**
+     * Copy the species grid of the field, row by row.
+     * @param species Receives the species id of each position, at
+     *                index row * width + col.
+     */
+    public void copySpecies(byte[] species)
     {
-        return field[row][col];
+        int index = 0;
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                species[index++] = getSpeciesAt(row, col);
+            }
+        }
+    }
+    
+    /**
+     * Return the number of occupants of one species. This is
+     * kept up to date as the field changes, so needs no scan.
+     * @param species The species id.
+     * @return The number of occupants of that species.
+     */
+    public int getPopulation(int species)
+    {
+        return population[species].intValue();
+    }
+    
+    /**
+     * Read the number of occupants of every species, without
+     * scanning the field.
+     * @param counts Receives the number of occupants of each species,
+     *               indexed by species id. It is added to, not reset.
+     */
+    public void population(int[] counts)
+    {
+        int occupied = 0;
+        for(int species = Species.EMPTY + 1; species < Species.COUNT; species++) {
+            int count = population[species].intValue();
+            counts[species] += count;
+            occupied += count;
+        }
+        counts[Species.EMPTY] += countEmpty(occupied);
+    }
+    
+    /**
+     * Return the number of empty locations, given the number of
+     * occupied ones.
+     * @param occupied The number of occupied locations.
+     * @return The number of empty ones, or Integer.MAX_VALUE if there
+     *         are more than that.
+     */
+    protected int countEmpty(long occupied)
+    {
+        return (int) Math.min((long) depth * width - occupied, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @return The bitboards of the occupants of the field, or null if
+     *         it keeps none.
+     */
+    public Occupancy getOccupancy()
+    {
+        return occupancy;
+    }
+    
+    /**
+     * Record the sex of the animal at a location once it has been
+     * decided. An animal is recorded with the sex it has when it is
+     * placed.
+     * @param row The row of the animal.
+     * @param col The column of the animal.
+     * @param female Whether the animal is female.
+     */
+    public void setFemale(int row, int col, boolean female)
+    {
+        if(occupancy != null) {
+            occupancy.setSex(row, col, getSpeciesAt(row, col), female ? Occupancy.FEMALE : Occupancy.MALE);
+        }
+    }
+    
+    /**
+     * Record that an occupant has been placed in the field.
+     * @param species The species id of the occupant.
+     * @param row The row it was placed at.
+     * @param col The column it was placed at.
+     * @param occupant The occupant.
+     */
+    protected void added(byte species, int row, int col, Object occupant)
+    {
+        population[species].increment();
+        if(occupancy != null) {
+            int sex = Occupancy.NEUTER;
+            if(occupant instanceof Animal) {
+                sex = ((Animal) occupant).isFemale() ? Occupancy.FEMALE : Occupancy.MALE;
+            }
+            occupancy.set(row, col, species, sex);
+        }
+    }
+    
+    /**
+     * Record that an occupant has been cleared from the field.
+     * @param species The species id of the occupant.
+     * @param row The row it was cleared from.
+     * @param col The column it was cleared from.
+     */
+    protected void removed(byte species, int row, int col)
+    {
+        population[species].decrement();
+        if(occupancy != null) {
+            occupancy.clear(row, col, species);
+        }
+    }
+    
+    /**
+     * Record that an occupant has moved to an empty location.
+     * @param species The species id of the occupant.
+     * @param fromRow The row it moved from.
+     * @param fromCol The column it moved from.
+     * @param toRow The row it moved to.
+     * @param toCol The column it moved to.
+     */
+    protected void moved(byte species, int fromRow, int fromCol, int toRow, int toCol)
+    {
+        if(occupancy != null) {
+            occupancy.move(fromRow, fromCol, toRow, toCol, species);
+        }
+    }
+    
+    /**
+     * Take over the population counts and bitboards of another field,
+     * for a field forked from it.
+     * @param other The field forked from.
+     */
+    protected void copyPopulation(Field other)
+    {
+        for(int species = 0; species < Species.COUNT; species++) {
+            population[species].reset();
+            population[species].add(other.population[species].sum());
+        }
+        if(occupancy != null) {
+            occupancy.copy(other.occupancy);
+        }
+    }
+    
+    /**
+     * Record that the field has been emptied.
+     */
+    protected void emptied()
+    {
+        for(int species = 0; species < Species.COUNT; species++) {
+            population[species].reset();
+        }
+        if(occupancy != null) {
+            occupancy.clear();
+        }
+    }
+    
+    /**
+     * Count the occupants of the field by species by scanning
+     * every position. Unlike population, this does not rely on
+     * the running counts.
+     * @param counts Receives the number of occupants of each species,
+     *               indexed by species id. It is added to, not reset.
+     */
+    public void census(int[] counts)
+    {
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                counts[getSpeciesAt(row, col)]++;
+            }
+        }
     }
     
     /**
@@ -125,7 +371,7 @@ public class Field
         List<Location> free = new LinkedList<Location>();
         List<Location> adjacent = adjacentLocations(location);
         for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
+            if(isFree(next.getRow(), next.getCol())) {
                 free.add(next);
             }
         }
@@ -156,17 +402,132 @@ public class Field
     {
     	List<Location> male = new LinkedList<Location>();
     	List<Location> adjacent = adjacentLocations(location);
+    	byte species = Species.ofClass(c);
         for(Location next : adjacent) {
-        	Object obj = getObjectAt(next);
-        	if (obj instanceof Animal) {
-        		Animal a = (Animal) obj;
-                if(a != null && c == a.getClass() && !a.isFemale()) {
-                    male.add(next);
-                }
-        	}
+            if(isMale(next.getRow(), next.getCol(), species)) {
+                male.add(next);
+            }
         }
         return male;
     }
+    
+    /**
+     * Count the free locations adjacent to the given one.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return The number of empty adjacent locations.
+     */
+    public int countFreeAdjacent(int row, int col)
+    {
+        if(occupancy != null) {
+            return occupancy.countFreeAdjacent(row, col);
+        }
+        int free = 0;
+        for(int nextRow = Math.max(row - 1, 0); nextRow <= Math.min(row + 1, depth - 1); nextRow++) {
+            for(int nextCol = Math.max(col - 1, 0); nextCol <= Math.min(col + 1, width - 1); nextCol++) {
+                if(getSpeciesAt(nextRow, nextCol) == Species.EMPTY) {
+                    free++;
+                }
+            }
+        }
+        // The location itself is not adjacent to itself.
+        if(getSpeciesAt(row, col) == Species.EMPTY) {
+            free--;
+        }
+        return free;
+    }
+    
+    /**
+     * Determine whether a male animal of the given class is
+     * adjacent to the given location.
+     * @param c The class of animal to look for.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return true if there is at least one such male.
+     */
+    public boolean hasAdjacentMale(Class c, int row, int col)
+    {
+        return hasAdjacentMale(Species.ofClass(c), row, col);
+    }
+    
+    /**
+     * Determine whether a male animal of the given species is
+     * adjacent to the given location.
+     * @param species The species to look for.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return true if there is at least one such male.
+     */
+    public boolean hasAdjacentMale(byte species, int row, int col)
+    {
+        if(occupancy != null) {
+            return occupancy.hasAdjacentMale(species, row, col);
+        }
+        return countAdjacentMales(species, row, col) > 0;
+    }
+    
+    /**
+     * Count the male animals of the given class adjacent to the
+     * given location.
+     * @param c The class of animal to look for.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return The number of such males.
+     */
+    public int countAdjacentMales(Class c, int row, int col)
+    {
+        return countAdjacentMales(Species.ofClass(c), row, col);
+    }
+    
+    /**
+     * Count the male animals of the given species adjacent to the
+     * given location.
+     * @param species The species to look for.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return The number of such males.
+     */
+    public int countAdjacentMales(byte species, int row, int col)
+    {
+        if(occupancy != null) {
+            return occupancy.countAdjacentMales(species, row, col);
+        }
+        int males = 0;
+        for(int nextRow = Math.max(row - 1, 0); nextRow <= Math.min(row + 1, depth - 1); nextRow++) {
+            for(int nextCol = Math.max(col - 1, 0); nextCol <= Math.min(col + 1, width - 1); nextCol++) {
+                if((nextRow != row || nextCol != col) && isMale(nextRow, nextCol, species)) {
+                    males++;
+                }
+            }
+        }
+        return males;
+    }
+    
+    /**
+     * @return true if the given location is empty.
+     */
+    private boolean isFree(int row, int col)
+    {
+        if(occupancy != null) {
+            return !occupancy.isOccupied(row, col);
+        }
+        return getSpeciesAt(row, col) == Species.EMPTY;
+    }
+    
+    /**
+     * @return true if the given location holds a male of the given species.
+     */
+    private boolean isMale(int row, int col, byte species)
+    {
+        if(occupancy != null) {
+            return occupancy.isMale(row, col, species);
+        }
+        if(getSpeciesAt(row, col) != species) {
+            return false;
+        }
+        Object obj = getObjectAt(row, col);
+        return obj instanceof Animal && !((Animal) obj).isFemale();
+    }
 
     /**
      * Return a shuffled list of locations adjacent to the given one.
@@ -0,0 +1,113 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * A copy of the species grid and population counts of a field at
+ * one step. The simulation fills a snapshot and hands it over to the
+ * display, which can then draw it while the simulation carries on
+ * changing the field. Snapshots are reused, so they are filled in
+ * place rather than created for every step.
+ */
+public class FieldSnapshot
+{
+    // The depth and width of the field.
+    private final int depth, width;
+    // The species id of each position, row by row.
+    private final byte[] species;
+    // The number of occupants of each species, indexed by species id.
+    private final int[] counts;
+    // The step the snapshot was taken at.
+    private int step;
+    // Whether the snapshot has been handed over but not yet taken.
+    // Used by SnapshotBuffer.
+    boolean fresh;
+
+    /**
+     * Create an empty snapshot of a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public FieldSnapshot(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        species = new byte[depth * width];
+        counts = new int[Species.COUNT];
+    }
+
+    /**
+     * Copy the state of a field into this snapshot.
+     * @param step The step the field has reached.
+     * @param field The field, of the same dimensions as the snapshot.
+     */
+    public void capture(int step, Field field)
+    {
+        this.step = step;
+        field.copySpecies(species);
+        Arrays.fill(counts, 0);
+        field.population(counts);
+    }
+
+    /**
+     * Record the step of a snapshot filled in place, through
+     * getSpecies and getCounts.
+     * @param step The step the snapshot shows.
+     */
+    void setStep(int step)
+    {
+        this.step = step;
+    }
+
+    /**
+     * @return The step the snapshot was taken at.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        return species[row * width + col];
+    }
+
+    /**
+     * @return The species id of each position, at index
+     *         row * width + col. The array belongs to the snapshot.
+     */
+    public byte[] getSpecies()
+    {
+        return species;
+    }
+
+    /**
+     * @return The number of occupants of each species, indexed by
+     *         species id. The array belongs to the snapshot.
+     */
+    public int[] getCounts()
+    {
+        return counts;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+}
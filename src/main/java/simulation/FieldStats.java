@@ -65,6 +65,30 @@ public class FieldStats
      * @param animalClass The class of animal to increment.
      */
     public void incrementCount(Class animalClass)
+    {
+        getCounter(animalClass).increment();
+    }
+
+    /**
+     * Add counts for all species at once.
+     * @param counts The number of animals of each species,
+     *               indexed by species id.
+     */
+    public void addCounts(int[] counts)
+    {
+        for(int species = 0; species < counts.length; species++) {
+            if(species != Species.EMPTY && counts[species] > 0) {
+                getCounter(Species.classOf(species)).add(counts[species]);
+            }
+        }
+    }
+    
+    /**
+     * Return the counter for one class of animal.
+     * @param animalClass The class of animal.
+     * @return The counter, created if there was none yet.
+     */
+    private Counter getCounter(Class animalClass)
     {
         Counter count = counters.get(animalClass);
         if(count == null) {
@@ -73,7 +97,7 @@ public class FieldStats
             count = new Counter(animalClass.getName());
             counters.put(animalClass, count);
         }
-        count.increment();
+        return count;
     }
 
     /**
@@ -121,22 +145,16 @@ public class FieldStats
     
     /**
      * Generate counts of the number of foxes and rabbits.
-     * These are not kept up to date as foxes and rabbits
-     * are placed in the field, but only when a request
-     * is made for the information.
+     * These are read from the running counts of the field,
+     * so no scan of the field is needed.
      * @param field The field to generate the stats for.
      */
     private void generateCounts(Field field)
     {
         reset();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    incrementCount(animal.getClass());
-                }
-            }
-        }
+        int[] counts = new int[Species.COUNT];
+        field.population(counts);
+        addCounts(counts);
         countsValid = true;
     }
 }
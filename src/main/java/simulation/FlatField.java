@@ -0,0 +1,222 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * A field which keeps its grid in flat primitive arrays, row by
+ * row: the id of each occupant and, in parallel, its species.
+ * A position is addressed by the packed index row * width + col,
+ * so no Location objects are needed to read or update the field,
+ * and census or display code can scan the species grid without
+ * following any object references.
+ */
+public class FlatField extends Field
+{
+    // The width of the field, kept for packing indices.
+    private final int width;
+    // The occupant id + 1 of each position; zero marks an empty one.
+    private final int[] ids;
+    // The species id of each position.
+    private final byte[] species;
+    // The occupants, addressed by id.
+    private final Occupants occupants;
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public FlatField(int depth, int width)
+    {
+        this(depth, width, new Occupants());
+    }
+
+    /**
+     * Represent a field of the given dimensions, with its table of
+     * occupants.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param occupants The table of occupants.
+     */
+    private FlatField(int depth, int width, Occupants occupants)
+    {
+        super(depth, width);
+        this.width = width;
+        ids = new int[depth * width];
+        species = new byte[depth * width];
+        this.occupants = occupants;
+    }
+    
+    /**
+     * Return the packed index of a position.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return row * width + col.
+     */
+    public int index(int row, int col)
+    {
+        return row * width + col;
+    }
+    
+    /**
+     * Empty the field.
+     */
+    public void clear()
+    {
+        Arrays.fill(ids, 0);
+        Arrays.fill(species, Species.EMPTY);
+        occupants.clear();
+        emptied();
+    }
+    
+    /**
+     * Clear the given location.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void clear(int row, int col)
+    {
+        clear(index(row, col));
+    }
+    
+    /**
+     * Clear the position with the given packed index.
+     * @param index The packed index of the position.
+     */
+    public void clear(int index)
+    {
+        int id = ids[index];
+        if(id != 0) {
+            occupants.remove(id - 1);
+            removed(species[index], index / width, index % width);
+            ids[index] = 0;
+            species[index] = Species.EMPTY;
+        }
+    }
+    
+    /**
+     * Place an animal at the given location.
+     * If there is already an animal at the location it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void place(Object animal, int row, int col)
+    {
+        int index = index(row, col);
+        clear(index);
+        if(animal != null) {
+            ids[index] = occupants.add(animal) + 1;
+            species[index] = Species.of(animal);
+            added(species[index], row, col, animal);
+        }
+    }
+    
+    /**
+     * Move whatever is at one location to another. Anything
+     * already at the destination will be lost. The occupant
+     * keeps its id.
+     * @param fromRow Row coordinate of the current location.
+     * @param fromCol Column coordinate of the current location.
+     * @param toRow Row coordinate of the new location.
+     * @param toCol Column coordinate of the new location.
+     */
+    public void move(int fromRow, int fromCol, int toRow, int toCol)
+    {
+        int from = index(fromRow, fromCol);
+        int to = index(toRow, toCol);
+        if(from != to) {
+            clear(to);
+            if(ids[from] == 0) {
+                // Nothing to move; the destination is left empty.
+                return;
+            }
+            ids[to] = ids[from];
+            species[to] = species[from];
+            ids[from] = 0;
+            species[from] = Species.EMPTY;
+            moved(species[to], fromRow, fromCol, toRow, toCol);
+        }
+    }
+    
+    /**
+     * Return the animal at the given location, if any.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The animal at the given location, or null if there is none.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        return getObjectAt(index(row, col));
+    }
+    
+    /**
+     * Return the animal at the position with the given packed index.
+     * @param index The packed index of the position.
+     * @return The animal at the position, or null if there is none.
+     */
+    public Object getObjectAt(int index)
+    {
+        int id = ids[index];
+        return id == 0 ? null : occupants.get(id - 1);
+    }
+    
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        return species[index(row, col)];
+    }
+    
+    /**
+     * Replace the occupant of a location by another of the same
+     * species. The occupant id is kept.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     * @param occupant The new occupant.
+     */
+    public void replace(int row, int col, Object occupant)
+    {
+        occupants.set(ids[index(row, col)] - 1, occupant);
+    }
+    
+    /**
+     * @return A copy of this field, holding the same occupants
+     *         under the same ids.
+     */
+    public Field fork()
+    {
+        FlatField copy = new FlatField(getDepth(), width, occupants.copy());
+        System.arraycopy(ids, 0, copy.ids, 0, ids.length);
+        System.arraycopy(species, 0, copy.species, 0, species.length);
+        copy.copyPopulation(this);
+        return copy;
+    }
+    
+    /**
+     * Copy the species grid of the field, row by row.
+     * @param species Receives the species id of each position, at
+     *                index row * width + col.
+     */
+    public void copySpecies(byte[] species)
+    {
+        System.arraycopy(this.species, 0, species, 0, this.species.length);
+    }
+    
+    /**
+     * Count the occupants of the field by species, scanning
+     * the species grid only.
+     * @param counts Receives the number of occupants of each species,
+     *               indexed by species id. It is added to, not reset.
+     */
+    public void census(int[] counts)
+    {
+        for(int i = 0; i < species.length; i++) {
+            counts[species[i]]++;
+        }
+    }
+}
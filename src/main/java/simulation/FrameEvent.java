@@ -0,0 +1,21 @@
+package simulation;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for one frame painted by the view of a
+ * simulation. Its duration is the time taken to paint the frame.
+ */
+@Name("simulation.Frame")
+@Label("Simulation Frame")
+@Category("Simulation")
+@Description("A frame of a predator-prey simulation painted")
+public class FrameEvent extends Event
+{
+    @Label("Step")
+    @Description("The step shown in the frame")
+    int step;
+}
@@ -0,0 +1,170 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * A growable sequence of ints, stored in fixed-size primitive chunks.
+ * Adding never copies the values already stored, and any value can be
+ * read by its position in constant time. It is used for time series,
+ * such as the population of a species at every step.
+ * 
+ * The oldest values can be discarded, a chunk at a time, to bound the
+ * memory used by a long series. Positions are not affected: values
+ * keep their position, and only those from getStart() on can be read.
+ */
+public class IntSeries
+{
+    // Each chunk holds 2^CHUNK_BITS values.
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // The chunks of values; only the last one may be partly filled.
+    private int[][] chunks;
+    // The number of values ever added.
+    private int size;
+    // The position of the oldest value kept.
+    private int start;
+
+    /**
+     * Create an empty series.
+     */
+    public IntSeries()
+    {
+        chunks = new int[8][];
+    }
+
+    /**
+     * Add a value to the end of the series.
+     * @param value The value to add.
+     */
+    public void add(int value)
+    {
+        int chunk = size >>> CHUNK_BITS;
+        if(chunk >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunk + 1, chunks.length * 2));
+        }
+        if(chunks[chunk] == null) {
+            chunks[chunk] = new int[CHUNK_SIZE];
+        }
+        chunks[chunk][size & CHUNK_MASK] = value;
+        size++;
+    }
+
+    /**
+     * Return the value at a position.
+     * @param index The position, from 0 to size() - 1.
+     * @return The value at that position.
+     */
+    public int get(int index)
+    {
+        if(index < start || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * @return The number of values ever added to the series,
+     *         including any that have been discarded.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The position of the oldest value which has not been
+     *         discarded.
+     */
+    public int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Discard values before a position, to release their memory.
+     * Values are discarded in whole chunks, so some values before
+     * the position may be kept.
+     * @param index The position of the oldest value to be kept.
+     */
+    public void discardBefore(int index)
+    {
+        int chunk = Math.min(index, size) >>> CHUNK_BITS;
+        for(int i = start >>> CHUNK_BITS; i < chunk; i++) {
+            chunks[i] = null;
+        }
+        start = Math.max(start, chunk << CHUNK_BITS);
+    }
+
+    /**
+     * Discard all values and continue the series at a later position,
+     * as if the positions in between had been added and discarded.
+     * @param index The position of the next value to be added.
+     */
+    public void skipTo(int index)
+    {
+        if(index < size) {
+            throw new IllegalArgumentException("Cannot skip back from " + size + " to " + index);
+        }
+        discardBefore(size);
+        Arrays.fill(chunks, start >>> CHUNK_BITS, chunks.length, null);
+        size = index;
+        start = index;
+    }
+
+    /**
+     * Copy a range of the series into an array.
+     * @param from The position of the first value to copy.
+     * @param to The position after the last value to copy.
+     * @param dest The array to copy into.
+     * @param destPos Where in the array to put the first value.
+     */
+    public void copy(int from, int to, int[] dest, int destPos)
+    {
+        if(from < start || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range: " + from + " to " + to + ", size: " + size);
+        }
+        while(from < to) {
+            int offset = from & CHUNK_MASK;
+            int length = Math.min(CHUNK_SIZE - offset, to - from);
+            System.arraycopy(chunks[from >>> CHUNK_BITS], offset, dest, destPos, length);
+            from += length;
+            destPos += length;
+        }
+    }
+
+    /**
+     * @return A new array holding the values of the series which
+     *         have not been discarded.
+     */
+    public int[] toArray()
+    {
+        int[] values = new int[size - start];
+        copy(start, size, values, 0);
+        return values;
+    }
+
+    /**
+     * Return the largest value in a range of the series.
+     * @param from The position of the first value.
+     * @param to The position after the last value.
+     * @return The largest value, or Integer.MIN_VALUE if the range is empty.
+     */
+    public int max(int from, int to)
+    {
+        if(from < start || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range: " + from + " to " + to + ", size: " + size);
+        }
+        int max = Integer.MIN_VALUE;
+        while(from < to) {
+            int[] chunk = chunks[from >>> CHUNK_BITS];
+            int offset = from & CHUNK_MASK;
+            int end = offset + Math.min(CHUNK_SIZE - offset, to - from);
+            for(int i = offset; i < end; i++) {
+                max = Math.max(max, chunk[i]);
+            }
+            from += end - offset;
+        }
+        return max;
+    }
+}
@@ -56,6 +56,37 @@ public class Location
         return (row << 16) + col;
     }
     
+    /**
+     * Pack a row and column into a single long, the row in the
+     * top 32 bits and the column in the bottom. Unlike hashCode,
+     * this is unique for every (row, col) pair.
+     * @param row The row.
+     * @param col The column.
+     * @return The packed location.
+     */
+    public static long pack(int row, int col)
+    {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+    
+    /**
+     * @param packed A location packed by pack().
+     * @return The row of the location.
+     */
+    public static int rowOf(long packed)
+    {
+        return (int) (packed >> 32);
+    }
+    
+    /**
+     * @param packed A location packed by pack().
+     * @return The column of the location.
+     */
+    public static int colOf(long packed)
+    {
+        return (int) packed;
+    }
+    
     /**
      * @return The row.
      */
@@ -0,0 +1,173 @@
+package simulation;
+
+/**
+ * A reusable cursor over the locations adjacent to a position in
+ * a field, visited in a random order. The order is taken from a
+ * table of all orderings of the eight neighbours, so moving the
+ * cursor to a new position costs one random draw and no objects
+ * are allocated while it is used.
+ * 
+ * Typical use:
+ *     Neighbourhood near = context.getNeighbourhood();
+ *     near.around(field, row, col, rand);
+ *     while(near.nextFree()) {
+ *         ... near.getRow(), near.getCol() ...
+ *     }
+ */
+public class Neighbourhood
+{
+    // The row and column offsets of the eight neighbours.
+    private static final int[] ROW_OFFSETS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] COL_OFFSETS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+    // The number of neighbours of a position away from the edges.
+    private static final int NEIGHBOURS = 8;
+    // The number of orderings of the neighbours (8!).
+    private static final int PERMUTATION_COUNT = 40320;
+    // Every ordering of the neighbours, NEIGHBOURS entries each.
+    private static final byte[] PERMUTATIONS = makePermutations();
+
+    // The field and the position whose neighbours are visited.
+    private Field field;
+    private int row, col;
+    // The start of the current ordering in PERMUTATIONS.
+    private int base;
+    // How many entries of the current ordering have been used.
+    private int position;
+    // The neighbour the cursor is on.
+    private int currentRow, currentCol;
+
+    /**
+     * Create a cursor. It must be moved with around() before use.
+     */
+    public Neighbourhood()
+    {
+        position = NEIGHBOURS;
+    }
+
+    /**
+     * Move the cursor to the neighbours of the given position,
+     * choosing a new random order for them.
+     * @param field The field to look in.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @param rand The random generator choosing the order.
+     * @return This cursor.
+     */
+    public Neighbourhood around(Field field, int row, int col, Randomizer rand)
+    {
+        this.field = field;
+        this.row = row;
+        this.col = col;
+        base = rand.nextInt(PERMUTATION_COUNT) * NEIGHBOURS;
+        position = 0;
+        return this;
+    }
+
+    /**
+     * Advance to the next neighbour which lies within the field.
+     * @return true if there was one, false if all have been visited.
+     */
+    public boolean next()
+    {
+        while(position < NEIGHBOURS) {
+            int n = PERMUTATIONS[base + position++];
+            int nextRow = row + ROW_OFFSETS[n];
+            int nextCol = col + COL_OFFSETS[n];
+            if(nextRow >= 0 && nextRow < field.getDepth() &&
+               nextCol >= 0 && nextCol < field.getWidth()) {
+                currentRow = nextRow;
+                currentCol = nextCol;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advance to the next neighbour which is empty.
+     * @return true if there was one, false if all have been visited.
+     */
+    public boolean nextFree()
+    {
+        // A crowded position need not be searched.
+        if(position == 0 && field.countFreeAdjacent(row, col) == 0) {
+            position = NEIGHBOURS;
+            return false;
+        }
+        while(next()) {
+            if(field.getSpeciesAt(currentRow, currentCol) == Species.EMPTY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The row of the neighbour the cursor is on.
+     */
+    public int getRow()
+    {
+        return currentRow;
+    }
+
+    /**
+     * @return The column of the neighbour the cursor is on.
+     */
+    public int getCol()
+    {
+        return currentCol;
+    }
+
+    /**
+     * @return The occupant of the neighbour the cursor is on, or null.
+     */
+    public Object getObject()
+    {
+        return field.getObjectAt(currentRow, currentCol);
+    }
+
+    /**
+     * @return The species of the neighbour the cursor is on.
+     */
+    public byte getSpecies()
+    {
+        return field.getSpeciesAt(currentRow, currentCol);
+    }
+
+    /**
+     * Build the table of all orderings of the neighbours,
+     * in lexicographic order.
+     */
+    private static byte[] makePermutations()
+    {
+        byte[] table = new byte[PERMUTATION_COUNT * NEIGHBOURS];
+        byte[] current = new byte[NEIGHBOURS];
+        for(int i = 0; i < NEIGHBOURS; i++) {
+            current[i] = (byte) i;
+        }
+        for(int p = 0; p < PERMUTATION_COUNT; p++) {
+            System.arraycopy(current, 0, table, p * NEIGHBOURS, NEIGHBOURS);
+            // Step to the next permutation in lexicographic order.
+            int i = NEIGHBOURS - 2;
+            while(i >= 0 && current[i] > current[i + 1]) {
+                i--;
+            }
+            if(i < 0) {
+                break;
+            }
+            int j = NEIGHBOURS - 1;
+            while(current[j] < current[i]) {
+                j--;
+            }
+            byte swap = current[i];
+            current[i] = current[j];
+            current[j] = swap;
+            for(int lo = i + 1, hi = NEIGHBOURS - 1; lo < hi; lo++, hi--) {
+                swap = current[lo];
+                current[lo] = current[hi];
+                current[hi] = swap;
+            }
+        }
+        return table;
+    }
+}
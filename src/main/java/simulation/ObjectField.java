@@ -0,0 +1,98 @@
+package simulation;
+
+/**
+ * A field that keeps a reference to its occupants in a
+ * two-dimensional array, one element per position.
+ */
+public class ObjectField extends Field
+{
+    // Storage for the animals.
+    private Object[][] field;
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ObjectField(int depth, int width)
+    {
+        super(depth, width);
+        field = new Object[depth][width];
+    }
+    
+    /**
+     * Clear the given location.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void clear(int row, int col)
+    {
+        if(field[row][col] != null) {
+            removed(Species.of(field[row][col]), row, col);
+            field[row][col] = null;
+        }
+    }
+    
+    /**
+     * Place an animal at the given location.
+     * If there is already an animal at the location it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void place(Object animal, int row, int col)
+    {
+        clear(row, col);
+        if(animal != null) {
+            field[row][col] = animal;
+            added(Species.of(animal), row, col, animal);
+        }
+    }
+    
+    /**
+     * Return the animal at the given location, if any.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The animal at the given location, or null if there is none.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        return field[row][col];
+    }
+    
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        return Species.of(field[row][col]);
+    }
+    
+    /**
+     * Replace the occupant of a location by another of the same species.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     * @param occupant The new occupant.
+     */
+    public void replace(int row, int col, Object occupant)
+    {
+        field[row][col] = occupant;
+    }
+    
+    /**
+     * @return A copy of this field, holding the same occupants.
+     */
+    public Field fork()
+    {
+        ObjectField copy = new ObjectField(getDepth(), getWidth());
+        for(int row = 0; row < field.length; row++) {
+            System.arraycopy(field[row], 0, copy.field[row], 0, field[row].length);
+        }
+        copy.copyPopulation(this);
+        return copy;
+    }
+}
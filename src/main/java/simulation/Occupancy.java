@@ -0,0 +1,343 @@
+package simulation;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The occupancy of a field as bitboards: grids of bits, one per
+ * location, marking where the males and the females of each species
+ * of animal are, where the actors of each other species are, and
+ * which locations are occupied at all. Each row of a grid is kept in
+ * 64-bit words, so the neighbours of a location are read from at most
+ * a few words, and a whole row of locations can be classified a word
+ * at a time. An occupant is marked in two grids only, so keeping the
+ * grids up to date costs two word updates per change.
+ *
+ * A Field keeps its occupancy in step with its occupants as they
+ * are placed, moved and cleared. When the tiles of a ParallelEngine
+ * may change locations which share a word at the same time, bits are
+ * set and cleared atomically; reads need no synchronisation, as the
+ * bits a tile reads are only changed by that tile.
+ */
+public class Occupancy
+{
+    // The sex of an occupant: none, for hunters, or male or female.
+    public static final int NEUTER = 0;
+    public static final int MALE = 1;
+    public static final int FEMALE = 2;
+
+    // The grid marking every occupied location. The occupants of each
+    // species without a sex have the grid of its id; EMPTY is never
+    // set, so its slot is used.
+    private static final int OCCUPIED = Species.EMPTY;
+    // The first of the grids of males and of females, by species id.
+    private static final int MALES = Species.COUNT;
+    private static final int FEMALES = 2 * Species.COUNT;
+    private static final int GRIDS = 3 * Species.COUNT;
+
+    // Atomic access to the words of the grids.
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // The depth and width of the field.
+    private final int depth, width;
+    // The number of words in each row of a grid, and in a grid.
+    private final int wordsPerRow;
+    private final int gridWords;
+    // The grids, one after the other, row by row.
+    private final long[] words;
+    // Whether the grids may be changed by several threads at once.
+    private boolean concurrent;
+
+    /**
+     * Create an empty occupancy for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public Occupancy(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        wordsPerRow = (width + 63) >>> 6;
+        gridWords = depth * wordsPerRow;
+        words = new long[GRIDS * gridWords];
+    }
+
+    /**
+     * Choose whether bits are set and cleared atomically, as needed
+     * while several threads may change the field at once.
+     * @param concurrent Whether to update the grids atomically.
+     */
+    public void setConcurrent(boolean concurrent)
+    {
+        this.concurrent = concurrent;
+    }
+
+    /**
+     * Mark a location as occupied.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @param species The species of the occupant.
+     * @param sex The sex of the occupant: NEUTER, MALE or FEMALE.
+     */
+    public void set(int row, int col, byte species, int sex)
+    {
+        long bit = 1L << col;
+        int word = row * wordsPerRow + (col >>> 6);
+        setBit(OCCUPIED, word, bit);
+        setBit(grid(species, sex), word, bit);
+    }
+
+    /**
+     * Mark a location as empty.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @param species The species of the occupant it held.
+     */
+    public void clear(int row, int col, byte species)
+    {
+        long bit = 1L << col;
+        int word = row * wordsPerRow + (col >>> 6);
+        clearBit(OCCUPIED, word, bit);
+        clearBit(grid(species, getSex(row, col, species)), word, bit);
+    }
+
+    /**
+     * Move the marks of an occupant from one location to another,
+     * which must be empty.
+     * @param fromRow The row of the occupant.
+     * @param fromCol The column of the occupant.
+     * @param toRow The row it moves to.
+     * @param toCol The column it moves to.
+     * @param species The species of the occupant.
+     */
+    public void move(int fromRow, int fromCol, int toRow, int toCol, byte species)
+    {
+        int sex = getSex(fromRow, fromCol, species);
+        clear(fromRow, fromCol, species);
+        set(toRow, toCol, species, sex);
+    }
+
+    /**
+     * Record the sex of the occupant of a location, once it is known.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @param species The species of the occupant.
+     * @param sex The sex of the occupant: NEUTER, MALE or FEMALE.
+     */
+    public void setSex(int row, int col, byte species, int sex)
+    {
+        long bit = 1L << col;
+        int word = row * wordsPerRow + (col >>> 6);
+        clearBit(grid(species, getSex(row, col, species)), word, bit);
+        setBit(grid(species, sex), word, bit);
+    }
+
+    /**
+     * @param row The row of a location.
+     * @param col The column of a location.
+     * @param species The species of the occupant of the location.
+     * @return The sex of the occupant: NEUTER, MALE or FEMALE.
+     */
+    public int getSex(int row, int col, byte species)
+    {
+        if(isSet(MALES + species, row, col)) {
+            return MALE;
+        }
+        else if(isSet(FEMALES + species, row, col)) {
+            return FEMALE;
+        }
+        return NEUTER;
+    }
+
+    /**
+     * @param row The row of a location.
+     * @param col The column of a location.
+     * @return true if the location is occupied.
+     */
+    public boolean isOccupied(int row, int col)
+    {
+        return isSet(OCCUPIED, row, col);
+    }
+
+    /**
+     * @param row The row of a location.
+     * @param col The column of a location.
+     * @param species The species to look for.
+     * @return true if the location holds a male of the species.
+     */
+    public boolean isMale(int row, int col, byte species)
+    {
+        return isSet(MALES + species, row, col);
+    }
+
+    /**
+     * Count the empty locations adjacent to a location.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return The number of empty adjacent locations.
+     */
+    public int countFreeAdjacent(int row, int col)
+    {
+        int rows = Math.min(row + 1, depth - 1) - Math.max(row - 1, 0) + 1;
+        int cols = Math.min(col + 1, width - 1) - Math.max(col - 1, 0) + 1;
+        return rows * cols - 1 - countAdjacent(OCCUPIED, row, col);
+    }
+
+    /**
+     * Count the males of a species adjacent to a location.
+     * @param species The species.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return The number of adjacent males.
+     */
+    public int countAdjacentMales(byte species, int row, int col)
+    {
+        return countAdjacent(MALES + species, row, col);
+    }
+
+    /**
+     * Determine whether a male of a species is adjacent to a location.
+     * @param species The species.
+     * @param row The row of the location.
+     * @param col The column of the location.
+     * @return true if there is at least one adjacent male.
+     */
+    public boolean hasAdjacentMale(byte species, int row, int col)
+    {
+        int grid = MALES + species;
+        return (window(grid, row - 1, col) | window(grid, row, col) & 5 | window(grid, row + 1, col)) != 0;
+    }
+
+    /**
+     * Return one word of a row of the occupants of a species, for
+     * classifying 64 locations at once.
+     * @param species The species, or Species.EMPTY for the grid of
+     *                all occupied locations.
+     * @param row The row.
+     * @param word The index of the word in the row: bit b of word w
+     *             is the location in column w * 64 + b.
+     * @return The word.
+     */
+    public long getWord(byte species, int row, int word)
+    {
+        int index = row * wordsPerRow + word;
+        if(species == Species.EMPTY) {
+            return words[index];
+        }
+        return words[species * gridWords + index] | words[(MALES + species) * gridWords + index]
+               | words[(FEMALES + species) * gridWords + index];
+    }
+
+    /**
+     * @return The number of words in each row.
+     */
+    public int getWordsPerRow()
+    {
+        return wordsPerRow;
+    }
+
+    /**
+     * Mark every location as empty.
+     */
+    public void clear()
+    {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * Take over the marks of another occupancy of the same size.
+     * @param other The occupancy to copy.
+     */
+    public void copy(Occupancy other)
+    {
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    /**
+     * @return The grid marking the occupants of a species and sex.
+     */
+    private static int grid(byte species, int sex)
+    {
+        if(sex == MALE) {
+            return MALES + species;
+        }
+        else if(sex == FEMALE) {
+            return FEMALES + species;
+        }
+        return species;
+    }
+
+    /**
+     * Count the set bits of a grid adjacent to a location.
+     */
+    private int countAdjacent(int grid, int row, int col)
+    {
+        return Integer.bitCount(window(grid, row - 1, col))
+               + Integer.bitCount(window(grid, row, col) & 5)
+               + Integer.bitCount(window(grid, row + 1, col));
+    }
+
+    /**
+     * Read the bits of a grid at three neighbouring columns of a row.
+     * Locations outside the field read as zero.
+     * @return The bits of columns col - 1, col and col + 1, in bits
+     *         0, 1 and 2.
+     */
+    private int window(int grid, int row, int col)
+    {
+        if(row < 0 || row >= depth) {
+            return 0;
+        }
+        int rowStart = grid * gridWords + row * wordsPerRow;
+        int bit = col & 63;
+        if(bit > 0 && bit < 63) {
+            // All three columns lie in one word.
+            return (int) (words[rowStart + (col >>> 6)] >>> (bit - 1)) & 7;
+        }
+        // The columns straddle two words, or the edge of the field.
+        int bits = ((int) (words[rowStart + (col >>> 6)] >>> bit) & 1) << 1;
+        if(col > 0) {
+            bits |= (int) (words[rowStart + ((col - 1) >>> 6)] >>> (col - 1)) & 1;
+        }
+        if(col + 1 < width) {
+            bits |= ((int) (words[rowStart + ((col + 1) >>> 6)] >>> (col + 1)) & 1) << 2;
+        }
+        return bits;
+    }
+
+    /**
+     * @return true if a bit of a grid is set.
+     */
+    private boolean isSet(int grid, int row, int col)
+    {
+        return (words[grid * gridWords + row * wordsPerRow + (col >>> 6)] & 1L << col) != 0;
+    }
+
+    /**
+     * Set a bit of a grid.
+     */
+    private void setBit(int grid, int word, long bit)
+    {
+        int index = grid * gridWords + word;
+        if(concurrent) {
+            WORDS.getAndBitwiseOr(words, index, bit);
+        }
+        else {
+            words[index] |= bit;
+        }
+    }
+
+    /**
+     * Clear a bit of a grid.
+     */
+    private void clearBit(int grid, int word, long bit)
+    {
+        int index = grid * gridWords + word;
+        if(concurrent) {
+            WORDS.getAndBitwiseAnd(words, index, ~bit);
+        }
+        else {
+            words[index] &= ~bit;
+        }
+    }
+}
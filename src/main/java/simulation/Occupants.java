@@ -0,0 +1,107 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * A table of the objects placed in a field, addressed by small
+ * integer ids. Fields that keep their grid in primitive arrays
+ * store these ids in the cells instead of object references.
+ * The ids of removed objects are handed out again, so the table
+ * only grows with the population, not with the size of the field.
+ */
+public class Occupants
+{
+    // The initial capacity of the table.
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The objects, indexed by id.
+    private Object[] objects;
+    // A stack of ids which have been released and may be reused.
+    private int[] free;
+    private int freeCount;
+    // The number of ids which have ever been handed out.
+    private int size;
+
+    /**
+     * Create an empty table.
+     */
+    public Occupants()
+    {
+        objects = new Object[INITIAL_CAPACITY];
+        free = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add an object to the table.
+     * @param object The object to add.
+     * @return The id under which the object is stored.
+     */
+    public synchronized int add(Object object)
+    {
+        int id;
+        if(freeCount > 0) {
+            id = free[--freeCount];
+        }
+        else {
+            if(size == objects.length) {
+                objects = Arrays.copyOf(objects, size * 2);
+                free = Arrays.copyOf(free, size * 2);
+            }
+            id = size++;
+        }
+        objects[id] = object;
+        return id;
+    }
+
+    /**
+     * Remove an object from the table. Its id may be reused.
+     * @param id The id of the object.
+     */
+    public synchronized void remove(int id)
+    {
+        objects[id] = null;
+        free[freeCount++] = id;
+    }
+
+    /**
+     * Return the object stored under the given id.
+     * @param id The id of the object.
+     * @return The object, or null if the id is not in use.
+     */
+    public Object get(int id)
+    {
+        return objects[id];
+    }
+
+    /**
+     * Replace the object stored under an id in use.
+     * @param id The id of the object.
+     * @param object The object to store instead.
+     */
+    public void set(int id, Object object)
+    {
+        objects[id] = object;
+    }
+
+    /**
+     * @return A copy of this table, handing out the same ids.
+     */
+    public synchronized Occupants copy()
+    {
+        Occupants copy = new Occupants();
+        copy.objects = objects.clone();
+        copy.free = free.clone();
+        copy.freeCount = freeCount;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Remove all objects from the table.
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        freeCount = 0;
+    }
+}
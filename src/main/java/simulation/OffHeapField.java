@@ -0,0 +1,333 @@
+package simulation;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A field which keeps its grid outside the Java heap, in direct
+ * buffers or in a memory-mapped file, so that grids larger than the
+ * heap, or than the largest array, can be simulated without the
+ * garbage collector ever scanning or copying them. As in FlatField,
+ * each position holds the id of its occupant and its species; the
+ * ids are read and written through a VarHandle view of the buffers.
+ * The occupants themselves are objects, kept on the heap in a table.
+ *
+ * The grid is split into bands of rows, each within the size of one
+ * buffer. A field backed by a file lays out the ids of all positions,
+ * row by row as 4-byte ints in the native byte order, followed by the
+ * species ids, one byte each. After force() the file holds a copy of
+ * the grid as it is, written without copying it first.
+ *
+ * Like SparseField, the field keeps no occupancy bitboards, which
+ * for grids of this size would take gigabytes of heap; neighbourhood
+ * queries read the neighbours one by one. It must only be changed by
+ * one thread at a time.
+ */
+public class OffHeapField extends Field
+{
+    // The most bytes a band may take in one buffer.
+    private static final int MAX_BAND_BYTES = Integer.MAX_VALUE;
+    // Reads and writes the ids of a buffer as ints.
+    private static final VarHandle IDS =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    // Zeroes, written over the buffers to empty the field.
+    private static final byte[] ZEROES = new byte[1 << 16];
+
+    // The width of the field.
+    private final int width;
+    // The number of rows in a band is 2^bandBits.
+    private final int bandBits;
+    private final int bandMask;
+    // The occupant id + 1 of each position of each band, as ints;
+    // zero marks an empty position.
+    private final ByteBuffer[] ids;
+    // The species id of each position of each band.
+    private final ByteBuffer[] species;
+    // The occupants, addressed by id.
+    private final Occupants occupants;
+
+    /**
+     * Represent a field of the given dimensions, in direct buffers.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public OffHeapField(int depth, int width)
+    {
+        this(depth, width, new Occupants());
+        for(int band = 0; band < ids.length; band++) {
+            ids[band] = ByteBuffer.allocateDirect(4 * bandCells(band)).order(ByteOrder.nativeOrder());
+            species[band] = ByteBuffer.allocateDirect(bandCells(band));
+        }
+    }
+
+    /**
+     * Represent a field of the given dimensions, mapped from a file.
+     * The file is created, or emptied if it exists.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param file The file holding the grid.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public OffHeapField(int depth, int width, Path file) throws IOException
+    {
+        this(depth, width, new Occupants());
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            long cells = (long) depth * width;
+            long offset = 0;
+            for(int band = 0; band < ids.length; band++) {
+                ids[band] = channel.map(FileChannel.MapMode.READ_WRITE, 4 * offset, 4L * bandCells(band))
+                                   .order(ByteOrder.nativeOrder());
+                species[band] = channel.map(FileChannel.MapMode.READ_WRITE, 4 * cells + offset,
+                                            bandCells(band));
+                offset += bandCells(band);
+            }
+        }
+    }
+
+    /**
+     * Represent a field of the given dimensions, with its table of
+     * occupants and no buffers yet.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param occupants The table of occupants.
+     */
+    private OffHeapField(int depth, int width, Occupants occupants)
+    {
+        super(depth, width, false);
+        this.width = width;
+        // As many rows as fit, rounded down to a power of two, so
+        // that a row is split into its band and row within it by
+        // shifting and masking.
+        int rows = Math.max(1, MAX_BAND_BYTES / 4 / width);
+        bandBits = 31 - Integer.numberOfLeadingZeros(rows);
+        bandMask = (1 << bandBits) - 1;
+        int bands = (int) (((long) depth + bandMask) >> bandBits);
+        ids = new ByteBuffer[bands];
+        species = new ByteBuffer[bands];
+        this.occupants = occupants;
+    }
+
+    /**
+     * Write any changes to the grid of a field mapped from a file
+     * out to the file. Does nothing for a field in direct buffers.
+     */
+    public void force()
+    {
+        for(int band = 0; band < ids.length; band++) {
+            if(ids[band] instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) ids[band]).force();
+                ((MappedByteBuffer) species[band]).force();
+            }
+        }
+    }
+
+    /**
+     * Empty the field.
+     */
+    public void clear()
+    {
+        for(int band = 0; band < ids.length; band++) {
+            zero(ids[band]);
+            zero(species[band]);
+        }
+        occupants.clear();
+        emptied();
+    }
+
+    /**
+     * Clear the given location.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void clear(int row, int col)
+    {
+        int band = row >> bandBits;
+        int cell = cell(row, col);
+        int id = (int) IDS.get(ids[band], cell << 2);
+        if(id != 0) {
+            occupants.remove(id - 1);
+            removed(species[band].get(cell), row, col);
+            IDS.set(ids[band], cell << 2, 0);
+            species[band].put(cell, Species.EMPTY);
+        }
+    }
+
+    /**
+     * Place an animal at the given location.
+     * If there is already an animal at the location it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void place(Object animal, int row, int col)
+    {
+        clear(row, col);
+        if(animal != null) {
+            int band = row >> bandBits;
+            int cell = cell(row, col);
+            byte kind = Species.of(animal);
+            IDS.set(ids[band], cell << 2, occupants.add(animal) + 1);
+            species[band].put(cell, kind);
+            added(kind, row, col, animal);
+        }
+    }
+
+    /**
+     * Move whatever is at one location to another. Anything
+     * already at the destination will be lost. The occupant
+     * keeps its id.
+     * @param fromRow Row coordinate of the current location.
+     * @param fromCol Column coordinate of the current location.
+     * @param toRow Row coordinate of the new location.
+     * @param toCol Column coordinate of the new location.
+     */
+    public void move(int fromRow, int fromCol, int toRow, int toCol)
+    {
+        if(fromRow != toRow || fromCol != toCol) {
+            clear(toRow, toCol);
+            int fromBand = fromRow >> bandBits;
+            int toBand = toRow >> bandBits;
+            int from = cell(fromRow, fromCol);
+            int to = cell(toRow, toCol);
+            if((int) IDS.get(ids[fromBand], from << 2) == 0) {
+                // Nothing to move; the destination is left empty.
+                return;
+            }
+            byte kind = species[fromBand].get(from);
+            IDS.set(ids[toBand], to << 2, (int) IDS.get(ids[fromBand], from << 2));
+            species[toBand].put(to, kind);
+            IDS.set(ids[fromBand], from << 2, 0);
+            species[fromBand].put(from, Species.EMPTY);
+            moved(kind, fromRow, fromCol, toRow, toCol);
+        }
+    }
+
+    /**
+     * Return the animal at the given location, if any.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The animal at the given location, or null if there is none.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        int id = (int) IDS.get(ids[row >> bandBits], cell(row, col) << 2);
+        return id == 0 ? null : occupants.get(id - 1);
+    }
+
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        return species[row >> bandBits].get(cell(row, col));
+    }
+
+    /**
+     * Replace the occupant of a location by another of the same
+     * species. The occupant id is kept.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     * @param occupant The new occupant.
+     */
+    public void replace(int row, int col, Object occupant)
+    {
+        occupants.set((int) IDS.get(ids[row >> bandBits], cell(row, col) << 2) - 1, occupant);
+    }
+
+    /**
+     * Create a copy of this field in direct buffers, even if this
+     * field is mapped from a file.
+     * @return The copy, holding the same occupants under the same ids.
+     */
+    public Field fork()
+    {
+        OffHeapField copy = new OffHeapField(getDepth(), width, occupants.copy());
+        for(int band = 0; band < ids.length; band++) {
+            copy.ids[band] = ByteBuffer.allocateDirect(ids[band].capacity()).order(ByteOrder.nativeOrder());
+            copy.ids[band].put(ids[band].duplicate().clear());
+            copy.species[band] = ByteBuffer.allocateDirect(species[band].capacity());
+            copy.species[band].put(species[band].duplicate().clear());
+        }
+        copy.copyPopulation(this);
+        return copy;
+    }
+
+    /**
+     * Copy the species grid of the field, row by row.
+     * @param species Receives the species id of each position, at
+     *                index row * width + col.
+     */
+    public void copySpecies(byte[] species)
+    {
+        int offset = 0;
+        for(ByteBuffer band : this.species) {
+            band.duplicate().clear().get(species, offset, band.capacity());
+            offset += band.capacity();
+        }
+    }
+
+    /**
+     * Count the occupants of the field by species, scanning
+     * the species grid only.
+     * @param counts Receives the number of occupants of each species,
+     *               indexed by species id. It is added to, not reset.
+     */
+    public void census(int[] counts)
+    {
+        long occupied = 0;
+        for(ByteBuffer band : species) {
+            for(int cell = 0; cell < band.capacity(); cell++) {
+                byte kind = band.get(cell);
+                if(kind != Species.EMPTY) {
+                    counts[kind]++;
+                    occupied++;
+                }
+            }
+        }
+        counts[Species.EMPTY] += countEmpty(occupied);
+    }
+
+    /**
+     * Return the position of a cell within its band.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The index of the cell in the buffers of its band.
+     */
+    private int cell(int row, int col)
+    {
+        return (row & bandMask) * width + col;
+    }
+
+    /**
+     * @return The number of positions in a band.
+     */
+    private int bandCells(int band)
+    {
+        int rows = Math.min(1 << bandBits, getDepth() - (band << bandBits));
+        return rows * width;
+    }
+
+    /**
+     * Write zeroes over the whole of a buffer.
+     * @param buffer The buffer.
+     */
+    private static void zero(ByteBuffer buffer)
+    {
+        ByteBuffer all = buffer.duplicate().clear();
+        while(all.hasRemaining()) {
+            all.put(ZEROES, 0, Math.min(ZEROES.length, all.remaining()));
+        }
+    }
+}
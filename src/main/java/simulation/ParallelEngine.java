@@ -0,0 +1,279 @@
+package simulation;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A simulation engine which lets the actors act in parallel.
+ * 
+ * The field is cut into square tiles, and the tiles are coloured
+ * like a 2x2 checkerboard. A step runs in four phases, one per
+ * colour; within a phase the tiles are processed concurrently on a
+ * ForkJoinPool. An actor only ever looks at and changes locations
+ * next to its own, so as long as tiles are at least two locations
+ * wide, two tiles of the same colour never touch the same location.
+ * 
+ * Each tile draws its random numbers from its own stream, derived
+ * from the engine seed, the step and the tile, and collects its
+ * newborns in its own birth store; these are added to the actors in
+ * tile order. The outcome of a run therefore
+ * depends only on the seed and the tile size, never on the number
+ * of threads or on how the threads were scheduled.
+ */
+public class ParallelEngine extends SimulationEngine
+{
+    // The default width and depth of a tile.
+    public static final int DEFAULT_TILE_SIZE = 32;
+    // The number of tile colours, and so of phases per step.
+    private static final int COLOURS = 4;
+
+    // The seed of all random numbers used in the run.
+    private final long seed;
+    // The stream from which the streams of the tiles are derived.
+    private final Randomizer tileSeeds;
+    // The width and depth of a tile.
+    private final int tileSize;
+    // The number of tiles across and down the field.
+    private final int tilesAcross, tilesDown;
+    // The tiles of each colour.
+    private final int[][] colourTiles;
+    // The working state of each tile.
+    private final StepContext[] contexts;
+    // The pool running the tiles.
+    private final ForkJoinPool pool;
+
+    // The slots of the actors at the start of the step, grouped by tile:
+    // those of tile t are at positions tileStart[t] to tileStart[t + 1] - 1.
+    private int[] byTile;
+    private int[] tileStart;
+    // The tile of each actor at the start of the step.
+    private int[] actorTile;
+
+    /**
+     * Construct a parallel simulation.
+     * @param dict The settings of each kind of actor.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The seed of all random numbers used in the run.
+     * @param threads The number of threads to use.
+     * @param tileSize The width and depth of a tile, at least 2.
+     */
+    public ParallelEngine(List<Dictionary> dict, int depth, int width, long seed,
+                          int threads, int tileSize)
+    {
+        super(dict, depth, width, new Randomizer(seed));
+        if(tileSize < 2) {
+            throw new IllegalArgumentException("Tiles must be at least 2 wide: " + tileSize);
+        }
+        this.seed = seed;
+        tileSeeds = new Randomizer(seed).split();
+        this.tileSize = tileSize;
+        tilesAcross = (width + tileSize - 1) / tileSize;
+        tilesDown = (depth + tileSize - 1) / tileSize;
+        int tiles = tilesAcross * tilesDown;
+
+        int[] perColour = new int[COLOURS];
+        for(int tile = 0; tile < tiles; tile++) {
+            perColour[colourOf(tile)]++;
+        }
+        colourTiles = new int[COLOURS][];
+        for(int colour = 0; colour < COLOURS; colour++) {
+            colourTiles[colour] = new int[perColour[colour]];
+            perColour[colour] = 0;
+        }
+        for(int tile = 0; tile < tiles; tile++) {
+            int colour = colourOf(tile);
+            colourTiles[colour][perColour[colour]++] = tile;
+        }
+
+        contexts = new StepContext[tiles];
+        for(int tile = 0; tile < tiles; tile++) {
+            contexts[tile] = new StepContext(new Randomizer(tile), getMetrics());
+        }
+        tileStart = new int[tiles + 1];
+        byTile = new int[0];
+        actorTile = new int[0];
+        pool = new ForkJoinPool(threads);
+        // Tiles of one colour may change bits of the same words.
+        getField().getOccupancy().setConcurrent(true);
+    }
+
+    /**
+     * Let every actor act once, tile by tile.
+     */
+    protected void actAll()
+    {
+        ActorStore actors = getActors();
+        groupByTile(actors);
+
+        EventBuffer events = getEvents();
+        for(int colour = 0; colour < COLOURS; colour++) {
+            int[] tiles = colourTiles[colour];
+            if(tiles.length > 0) {
+                pool.invoke(new TileTask(tiles, 0, tiles.length));
+            }
+            // The tiles of a colour are apart, so their events may be
+            // taken in tile order.
+            if(events.isEnabled()) {
+                for(int tile : tiles) {
+                    events.append(contexts[tile].getEvents());
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the actors born during the step to the actors, tile by tile.
+     * @return The number of actors born.
+     */
+    protected int adoptBirths()
+    {
+        ActorStore actors = getActors();
+        int born = 0;
+        for(int tile = 0; tile < contexts.length; tile++) {
+            born += contexts[tile].getBirths().size();
+            actors.adopt(contexts[tile].getBirths());
+        }
+        return born;
+    }
+
+    /**
+     * Turn the recording of the events of each step on or off.
+     * @param record Whether to record events.
+     */
+    public void setRecordEvents(boolean record)
+    {
+        super.setRecordEvents(record);
+        for(StepContext context : contexts) {
+            context.getEvents().setEnabled(record);
+        }
+    }
+
+    /**
+     * The actors of a parallel engine act tile by tile, so they
+     * cannot act species by species.
+     * @param phased Must be false.
+     */
+    public void setSpeciesPhased(boolean phased)
+    {
+        if(phased) {
+            throw new UnsupportedOperationException("A parallel engine acts tile by tile");
+        }
+    }
+
+    /**
+     * @return The seed of all random numbers used in the run.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The width and depth of a tile.
+     */
+    public int getTileSize()
+    {
+        return tileSize;
+    }
+
+    /**
+     * Stop the threads of this engine. It cannot be stepped afterwards.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Sort the actors into their tiles, keeping their order
+     * within each tile.
+     */
+    private void groupByTile(ActorStore actors)
+    {
+        int size = actors.size();
+        if(byTile.length < size) {
+            byTile = new int[size + size / 2];
+            actorTile = new int[byTile.length];
+        }
+        Arrays.fill(tileStart, 0);
+        for(int i = 0; i < size; i++) {
+            long location = actors.getLocation(i);
+            int tile = (Location.rowOf(location) / tileSize) * tilesAcross + Location.colOf(location) / tileSize;
+            actorTile[i] = tile;
+            tileStart[tile + 1]++;
+        }
+        for(int tile = 0; tile < contexts.length; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+        }
+        // Fill each tile from its end, walking the actors backwards.
+        for(int i = size - 1; i >= 0; i--) {
+            int tile = actorTile[i];
+            byTile[--tileStart[tile + 1]] = i;
+        }
+        // tileStart[t + 1] now holds the start of tile t; shift back.
+        System.arraycopy(tileStart, 1, tileStart, 0, contexts.length);
+        tileStart[contexts.length] = size;
+    }
+
+    /**
+     * Let the actors of one tile act.
+     * @param tile The tile.
+     */
+    private void actTile(int tile)
+    {
+        StepContext context = contexts[tile];
+        context.getRandom().reseed(tileSeeds.deriveSeed(getStep() * (long) contexts.length + tile));
+        ActorStore actors = getActors();
+        EventBuffer events = context.getEvents();
+        for(int i = tileStart[tile]; i < tileStart[tile + 1]; i++) {
+            int slot = byTile[i];
+            Actor actor = actors.get(slot);
+            // It may have been eaten by an actor of an earlier phase.
+            if(actor.isAlive()) {
+                long from = actors.getLocation(slot);
+                actor.act(context);
+                events.acted(actors.getSpecies(slot), from, actors.getLocation(slot));
+            }
+        }
+    }
+
+    /**
+     * @return The colour of a tile, from its row and column parity.
+     */
+    private int colourOf(int tile)
+    {
+        int tileRow = tile / tilesAcross;
+        int tileCol = tile % tilesAcross;
+        return (tileRow % 2) * 2 + tileCol % 2;
+    }
+
+    /**
+     * Process a range of tiles of one colour, splitting it
+     * so that idle threads can steal work.
+     */
+    private class TileTask extends RecursiveAction
+    {
+        private final int[] tiles;
+        private final int from, to;
+
+        TileTask(int[] tiles, int from, int to)
+        {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if(to - from == 1) {
+                actTile(tiles[from]);
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, middle), new TileTask(tiles, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package simulation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a simulation for many combinations of settings, to find
+ * out which ones let the species live together.
+ * 
+ * The settings varied are given as SweepParameters; the others keep
+ * their base values. The combinations, or configurations, are either
+ * every combination of the parameter values (a grid), or a Latin
+ * hypercube sample of the parameter ranges, which covers the range of
+ * every parameter evenly with far fewer runs than a grid.
+ * 
+ * The configurations are run on a ForkJoinPool, whose threads steal
+ * work from each other, so threads which draw short runs take on more
+ * of them. A run stops as soon as the simulation is no longer viable.
+ * Each configuration has its own random stream, derived from the sweep
+ * seed and its position, so the results do not depend on the threads.
+ */
+public class ParameterSweep
+{
+    // The settings of the configurations before the sweep changes them.
+    private final List<Dictionary> base;
+    // The size of the field.
+    private final int depth, width;
+    // The stream the seeds of the runs are derived from.
+    private final Randomizer seeds;
+    // The settings varied.
+    private final List<SweepParameter> parameters;
+
+    /**
+     * Create a sweep with no parameters yet.
+     * @param base The settings of each kind of actor, for the settings
+     *             which are not swept.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The seed all run seeds are derived from.
+     */
+    public ParameterSweep(List<Dictionary> base, int depth, int width, long seed)
+    {
+        this.base = base;
+        this.depth = depth;
+        this.width = width;
+        seeds = new Randomizer(seed);
+        parameters = new ArrayList<SweepParameter>();
+    }
+
+    /**
+     * Add a setting to vary.
+     * @param parameter The setting and its values.
+     */
+    public void addParameter(SweepParameter parameter)
+    {
+        parameters.add(parameter);
+    }
+
+    /**
+     * @return Every combination of the values of the parameters, one
+     *         row per configuration, one column per parameter.
+     */
+    public int[][] grid()
+    {
+        int total = 1;
+        for(SweepParameter parameter : parameters) {
+            total = Math.multiplyExact(total, parameter.getValues().length);
+        }
+        int[][] configurations = new int[total][parameters.size()];
+        for(int c = 0; c < total; c++) {
+            int rest = c;
+            for(int p = parameters.size() - 1; p >= 0; p--) {
+                int[] values = parameters.get(p).getValues();
+                configurations[c][p] = values[rest % values.length];
+                rest /= values.length;
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Draw a Latin hypercube sample of the parameter ranges: the range
+     * of each parameter is cut into as many equal strata as there are
+     * samples, and each stratum is used by exactly one sample.
+     * @param samples The number of configurations.
+     * @param rand The random stream to draw from.
+     * @return The configurations, one row each, one column per parameter.
+     */
+    public int[][] latinHypercube(int samples, Randomizer rand)
+    {
+        int[][] configurations = new int[samples][parameters.size()];
+        int[] strata = new int[samples];
+        for(int p = 0; p < parameters.size(); p++) {
+            SweepParameter parameter = parameters.get(p);
+            for(int i = 0; i < samples; i++) {
+                strata[i] = i;
+            }
+            // Shuffle the strata among the samples.
+            for(int i = samples - 1; i > 0; i--) {
+                int j = rand.nextInt(i + 1);
+                int swap = strata[i];
+                strata[i] = strata[j];
+                strata[j] = swap;
+            }
+            double span = parameter.getMax() - parameter.getMin() + 1;
+            for(int i = 0; i < samples; i++) {
+                double position = (strata[i] + rand.nextDouble()) / samples;
+                configurations[i][p] = parameter.getMin() + (int) (position * span);
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Run every configuration.
+     * @param configurations The configurations, one row each.
+     * @param steps The most steps to run each for.
+     * @param threads The number of threads to run them on.
+     * @return The result of each configuration, in the same order.
+     */
+    public SweepResult[] run(final int[][] configurations, final int steps, int threads)
+    {
+        final SweepResult[] results = new SweepResult[configurations.length];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new SweepTask(configurations, steps, results, 0, configurations.length));
+        }
+        finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Write the results as a table of comma separated values, one line
+     * per configuration: the parameter values, the steps run, and for
+     * each species its extinction step, mean population and period.
+     * @param results The results of a run of this sweep.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeTable(SweepResult[] results, Path file) throws IOException
+    {
+        Class[] classes = Species.animalClasses().toArray(new Class[0]);
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        try {
+            for(SweepParameter parameter : parameters) {
+                out.print(parameter.getName());
+                out.print(',');
+            }
+            out.print("steps");
+            for(Class animalClass : classes) {
+                String name = animalClass.getSimpleName();
+                out.print("," + name + ".extinction," + name + ".mean," + name + ".period");
+            }
+            out.println();
+            for(SweepResult result : results) {
+                for(int value : result.getValues()) {
+                    out.print(value);
+                    out.print(',');
+                }
+                out.print(result.getSteps());
+                for(int i = 0; i < classes.length; i++) {
+                    out.print("," + result.getExtinctionStep(i) + "," + result.getMeanPopulation(i)
+                              + "," + result.getPeriod(i));
+                }
+                out.println();
+            }
+        }
+        finally {
+            out.close();
+        }
+        if(out.checkError()) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Run one configuration.
+     * @param index The position of the configuration.
+     * @param values The values of the parameters.
+     * @param steps The most steps to run.
+     * @return The result.
+     */
+    private SweepResult runConfiguration(int index, int[] values, int steps)
+    {
+        List<Dictionary> dict = Dictionary.copy(base);
+        for(int p = 0; p < parameters.size(); p++) {
+            parameters.get(p).apply(dict, values[p]);
+        }
+        SimulationEngine engine = new SimulationEngine(dict, depth, width,
+                                                       new Randomizer(seeds.deriveSeed(index)));
+        engine.run(steps);
+        return new SweepResult(values, engine.getStatistics());
+    }
+
+    /**
+     * Runs a range of configurations, splitting it in two for other
+     * threads to steal while it is long.
+     */
+    private class SweepTask extends RecursiveAction
+    {
+        private final int[][] configurations;
+        private final int steps;
+        private final SweepResult[] results;
+        private final int from, to;
+
+        SweepTask(int[][] configurations, int steps, SweepResult[] results, int from, int to)
+        {
+            this.configurations = configurations;
+            this.steps = steps;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if(to - from <= 1) {
+                for(int i = from; i < to; i++) {
+                    results[i] = runConfiguration(i, configurations[i], steps);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SweepTask(configurations, steps, results, from, middle),
+                          new SweepTask(configurations, steps, results, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * The table of who eats whom, indexed by species id: for each
+ * predator, which species it takes, how much food each of them is
+ * worth, how much food it can hold, and how likely it is to catch
+ * a prey it has found. Predators look their prey up here instead of
+ * testing the class of each neighbour in turn.
+ */
+public class Predation
+{
+    // The food value of each prey for each predator, or -1 for
+    // species which are not taken. In effect, the number of steps
+    // the predator can go before it has to eat again.
+    private static final int[][] FOOD_VALUE = new int[Species.COUNT][Species.COUNT];
+    // The most food each predator can hold.
+    private static final int[] MAX_FOOD = new int[Species.COUNT];
+    // The likelihood of each predator catching a prey it has found.
+    private static final double[] CATCH_PROBABILITY = new double[Species.COUNT];
+    // Whether each predator shoots its prey rather than eating it.
+    private static final boolean[] SHOOTS = new boolean[Species.COUNT];
+
+    static {
+        for(int[] values : FOOD_VALUE) {
+            Arrays.fill(values, -1);
+        }
+        Arrays.fill(CATCH_PROBABILITY, 1.0);
+
+        FOOD_VALUE[Species.FOX][Species.RABBIT] = 10;
+        MAX_FOOD[Species.FOX] = 10;
+
+        FOOD_VALUE[Species.COYOTE][Species.RABBIT] = 8;
+        FOOD_VALUE[Species.COYOTE][Species.FOX] = 12;
+        MAX_FOOD[Species.COYOTE] = 12;
+
+        // Hunters shoot, and do not get hungry.
+        FOOD_VALUE[Species.HUNTER][Species.RABBIT] = 0;
+        FOOD_VALUE[Species.HUNTER][Species.FOX] = 0;
+        FOOD_VALUE[Species.HUNTER][Species.COYOTE] = 0;
+        CATCH_PROBABILITY[Species.HUNTER] = 0.45;
+        SHOOTS[Species.HUNTER] = true;
+    }
+
+    /**
+     * Return the food value of a prey for a predator.
+     * @param predator The species of the predator.
+     * @param prey The species of the prey.
+     * @return The food value, or -1 if the predator does not take the prey.
+     */
+    public static int getFoodValue(int predator, int prey)
+    {
+        return FOOD_VALUE[predator][prey];
+    }
+
+    /**
+     * @param predator The species of the predator.
+     * @return The most food the predator can hold.
+     */
+    public static int getMaxFood(int predator)
+    {
+        return MAX_FOOD[predator];
+    }
+
+    /**
+     * @param predator The species of the predator.
+     * @return true if the predator shoots its prey, rather than eating it.
+     */
+    public static boolean shoots(int predator)
+    {
+        return SHOOTS[predator];
+    }
+
+    /**
+     * Decide whether a predator catches a prey it has found. No
+     * random number is drawn for predators which always do.
+     * @param predator The species of the predator.
+     * @param rand The random stream to draw from.
+     * @return true if the prey is caught.
+     */
+    public static boolean catches(int predator, Randomizer rand)
+    {
+        double probability = CATCH_PROBABILITY[predator];
+        return probability >= 1.0 || rand.nextDouble() <= probability;
+    }
+}
@@ -0,0 +1,158 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * Estimates of one quantile of many separate streams of numbers,
+ * using the P-square algorithm of Jain and Chlamtac: each stream keeps
+ * five markers whose heights are adjusted as numbers arrive, so the
+ * memory used does not grow with the number of observations. The
+ * streams are called cells, and they all receive one number per round,
+ * for example one count per step from every replicate run.
+ */
+public class QuantileSketch
+{
+    // The number of markers of each cell.
+    private static final int MARKERS = 5;
+
+    // The quantile estimated, between 0 and 1.
+    private final double quantile;
+    // The fraction of the observations below each marker, ideally.
+    private final double[] fractions;
+    // The heights and actual positions (from 1) of the markers of each
+    // cell, five per cell. Until five numbers are in, the heights are
+    // the numbers themselves.
+    private final double[] heights;
+    private final int[] positions;
+    // The number of rounds of observations.
+    private int count;
+
+    /**
+     * Create the estimates for a number of cells.
+     * @param cells The number of cells.
+     * @param quantile The quantile to estimate, between 0 and 1.
+     */
+    public QuantileSketch(int cells, double quantile)
+    {
+        if(quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        this.quantile = quantile;
+        fractions = new double[] { 0, quantile / 2, quantile, (1 + quantile) / 2, 1 };
+        heights = new double[cells * MARKERS];
+        positions = new int[cells * MARKERS];
+    }
+
+    /**
+     * @return The quantile estimated.
+     */
+    public double getQuantile()
+    {
+        return quantile;
+    }
+
+    /**
+     * Start a new round of observations. Every cell should then be
+     * given one number with add.
+     */
+    public void nextRound()
+    {
+        count++;
+    }
+
+    /**
+     * Add a number to a cell, in the current round.
+     * @param cell The cell.
+     * @param x The number.
+     */
+    public void add(int cell, double x)
+    {
+        int base = cell * MARKERS;
+        if(count <= MARKERS) {
+            heights[base + count - 1] = x;
+            if(count == MARKERS) {
+                Arrays.sort(heights, base, base + MARKERS);
+                for(int i = 0; i < MARKERS; i++) {
+                    positions[base + i] = i + 1;
+                }
+            }
+            return;
+        }
+        // Find the cell of the markers the number falls in.
+        int k;
+        if(x < heights[base]) {
+            heights[base] = x;
+            k = 0;
+        }
+        else if(x >= heights[base + MARKERS - 1]) {
+            heights[base + MARKERS - 1] = x;
+            k = MARKERS - 2;
+        }
+        else {
+            k = 0;
+            while(x >= heights[base + k + 1]) {
+                k++;
+            }
+        }
+        for(int i = k + 1; i < MARKERS; i++) {
+            positions[base + i]++;
+        }
+        // Move the middle markers towards their ideal positions.
+        for(int i = 1; i < MARKERS - 1; i++) {
+            double desired = 1 + (count - 1) * fractions[i];
+            int n = positions[base + i];
+            double d = desired - n;
+            if((d >= 1 && positions[base + i + 1] - n > 1) || (d <= -1 && positions[base + i - 1] - n < -1)) {
+                int step = d > 0 ? 1 : -1;
+                double height = parabolic(base + i, step);
+                if(height <= heights[base + i - 1] || height >= heights[base + i + 1]) {
+                    height = linear(base + i, step);
+                }
+                heights[base + i] = height;
+                positions[base + i] = n + step;
+            }
+        }
+    }
+
+    /**
+     * Return the estimate of the quantile of a cell.
+     * @param cell The cell.
+     * @return The estimate, or NaN if there have been no observations.
+     */
+    public double get(int cell)
+    {
+        int base = cell * MARKERS;
+        if(count == 0) {
+            return Double.NaN;
+        }
+        if(count < MARKERS) {
+            double[] values = Arrays.copyOfRange(heights, base, base + count);
+            Arrays.sort(values);
+            return values[(int) Math.round(quantile * (count - 1))];
+        }
+        return heights[base + MARKERS / 2];
+    }
+
+    /**
+     * @return The height of a marker moved by one position, by
+     *         fitting a parabola through it and its neighbours.
+     */
+    private double parabolic(int i, int d)
+    {
+        double q = heights[i];
+        int n = positions[i];
+        int below = positions[i - 1];
+        int above = positions[i + 1];
+        return q + (double) d / (above - below)
+                   * ((n - below + d) * (heights[i + 1] - q) / (above - n)
+                      + (above - n - d) * (q - heights[i - 1]) / (n - below));
+    }
+
+    /**
+     * @return The height of a marker moved by one position, by
+     *         interpolating towards the neighbour it moves to.
+     */
+    private double linear(int i, int d)
+    {
+        return heights[i] + d * (heights[i + d] - heights[i]) / (positions[i + d] - positions[i]);
+    }
+}
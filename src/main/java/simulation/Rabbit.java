@@ -1,6 +1,4 @@
 package simulation;
-import java.util.List;
-import java.util.Random;
 
 /**
  * A simple model of a rabbit.
@@ -15,40 +13,49 @@ public class Rabbit extends Animal
 
     // The likelihood of a rabbit breeding.
     private static final double BREEDING_PROBABILITY = 0.48;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
     
     /**
      * Create a new rabbit. A rabbit may be created with age
      * zero (a new born) or with a random age.
      * 
      * @param randomAge If true, the rabbit will have a random age.
+     * @param context The working state of the current step.
      * @param field The field currently occupied.
      * @param location The location within the field.
      */
-    public Rabbit(int max_age, int breed_age, int max_litter, boolean randomAge, Field field, Location location)
+    public Rabbit(int max_age, int breed_age, int max_litter, boolean randomAge, StepContext context, Field field, Location location)
     {
-        super(max_age, breed_age, max_litter, randomAge, field, location);
+        super(max_age, breed_age, max_litter, randomAge, context, field, location);
+    }
+    
+    /**
+     * @return The species id of rabbits.
+     */
+    protected byte getSpecies()
+    {
+        return Species.RABBIT;
     }
     
     /**
      * This is what the rabbit does most of the time - it runs 
      * around. Sometimes it will breed or die of old age.
-     * @param newRabbits A list to return newly born rabbits.
+     * @param context The working state of the current step,
+     *                including a list to return newly born rabbits.
      */
-    public void act(List<Actor> newRabbits)
+    public void act(StepContext context)
     {
-        incrementAge();
+        incrementAge(context);
         if(isAlive()) {
-            giveBirth(newRabbits);            
+            giveBirth(context);            
             // Try to move into a free location.
-            Location newLocation = getField().freeAdjacentLocation(getLocation());
-            if(newLocation != null) {
-                setLocation(newLocation);
+            Neighbourhood free = context.getNeighbourhood();
+            free.around(getField(), getRow(), getCol(), context.getRandom());
+            if(free.nextFree()) {
+                setLocation(free.getRow(), free.getCol());
             }
             else {
                 // Overcrowding.
-                setDead();
+                setDead(StepMetrics.OVERCROWDING, context);
             }
         }
     }
@@ -56,33 +63,36 @@ public class Rabbit extends Animal
     /**
      * Check whether or not this rabbit is to give birth at this step.
      * New births will be made into free adjacent locations.
-     * @param newRabbits A list to return newly born rabbits.
+     * @param context The working state of the current step.
      */
-    private void giveBirth(List<Actor> newRabbits)
+    private void giveBirth(StepContext context)
     {
-        // New rabbits are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // New rabbits are born into adjacent free locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Rabbit young = new Rabbit(getMaxAge(), getBreedAge(), getMaxLitter(), false, field, loc);
-            newRabbits.add(young);
+        int births = breed(context.getRandom());
+        if(births > 0) {
+            Neighbourhood free = context.getNeighbourhood();
+            free.around(field, getRow(), getCol(), context.getRandom());
+            for(int b = 0; b < births && free.nextFree(); b++) {
+                Location loc = new Location(free.getRow(), free.getCol());
+                // The newborn adds itself to the births in the context.
+                new Rabbit(getMaxAge(), getBreedAge(), getMaxLitter(), false, context, field, loc);
+            }
         }
     }
         
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param rand The random generator deciding on the births.
      * @return The number of births (may be zero).
      */
-    protected int breed()
+    protected int breed(Randomizer rand)
     {
     	int births = 0;
         Field field = getField();
-        List<Location> male = field.getMaleAdjacentLocations(this.getClass(), getLocation());
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY && !male.isEmpty()) {
+        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY &&
+           field.hasAdjacentMale(getSpecies(), getRow(), getCol())) {
             births = rand.nextInt(getMaxLitter()) + 1;
         }
         return births;
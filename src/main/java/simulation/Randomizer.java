@@ -1,9 +1,21 @@
 package simulation;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
  * Provide control over the randomization of the simulation.
  * 
+ * A Randomizer object is a stream of random numbers for one
+ * simulation, or for one part of it. Streams are not shared between
+ * threads, so drawing from them involves no synchronization, and a
+ * stream can be split into independent child streams, for example
+ * one per tile or per actor. Numbers are generated with SplitMix64
+ * (the algorithm of java.util.SplittableRandom) into a buffer in
+ * bulk and handed out from there.
+ * 
+ * The static methods still provide the shared java.util.Random
+ * used by code outside the simulation engines.
+ * 
  * @author David J. Barnes and Michael K��lling
  * @version 2011.07.31
  */
@@ -15,12 +27,205 @@ public class Randomizer
     private static final Random rand = new Random(1111);
     // Determine whether a shared random generator is to be provided.
     private static final boolean useShared = true;
+    // The number of streams created with a default seed so far.
+    private static long defaultSeeds = 0;
+
+    // The increment of the SplitMix64 state at each draw.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // The number of values generated in one go.
+    private static final int BUFFER_SIZE = 64;
+    // The number of bytes written by writeState.
+    public static final int STATE_BYTES = 8 + 4 + BUFFER_SIZE * 8;
+
+    // The state of the generator.
+    private long state;
+    // Values generated in advance, and the next one to hand out.
+    private final long[] buffer;
+    private int position;
 
     /**
-     * Constructor for objects of class Randomizer
+     * Create a stream with a default seed. Successive calls give
+     * different streams, but the same ones in every run of the
+     * program.
      */
     public Randomizer()
     {
+        this(nextDefaultSeed());
+    }
+
+    /**
+     * Create a stream with the given seed.
+     * @param seed The seed.
+     */
+    public Randomizer(long seed)
+    {
+        buffer = new long[BUFFER_SIZE];
+        reseed(seed);
+    }
+
+    /**
+     * Restart the stream from the given seed.
+     * @param seed The seed.
+     */
+    public void reseed(long seed)
+    {
+        state = mix(seed);
+        position = BUFFER_SIZE;
+    }
+
+    /**
+     * Create a new stream, independent of this one. This
+     * advances this stream.
+     * @return The new stream.
+     */
+    public Randomizer split()
+    {
+        return new Randomizer(nextLong());
+    }
+
+    /**
+     * Return a seed for a child stream identified by a key, such as
+     * a step and tile number. The seed depends only on the key and on
+     * the current state of this stream, which is not advanced, so
+     * children can be derived in any order and from any thread.
+     * @param key The key of the child.
+     * @return The seed of the child stream.
+     */
+    public long deriveSeed(long key)
+    {
+        return mix(state ^ mix(key + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Save the exact position of the stream, so that it can be
+     * continued later with readState.
+     * @param out Receives STATE_BYTES bytes.
+     */
+    public void writeState(ByteBuffer out)
+    {
+        out.putLong(state);
+        out.putInt(position);
+        for(int i = 0; i < BUFFER_SIZE; i++) {
+            out.putLong(buffer[i]);
+        }
+    }
+
+    /**
+     * Continue the stream from a position saved by writeState.
+     * @param in Holds STATE_BYTES bytes written by writeState.
+     */
+    public void readState(ByteBuffer in)
+    {
+        state = in.getLong();
+        position = in.getInt();
+        for(int i = 0; i < BUFFER_SIZE; i++) {
+            buffer[i] = in.getLong();
+        }
+    }
+
+    /**
+     * @return A uniformly distributed long value.
+     */
+    public long nextLong()
+    {
+        if(position == BUFFER_SIZE) {
+            fill();
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * @return A uniformly distributed int value.
+     */
+    public int nextInt()
+    {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Return a uniformly distributed value between 0 (inclusive)
+     * and the bound (exclusive).
+     * @param bound The upper bound, which must be positive.
+     * @return The value.
+     */
+    public int nextInt(int bound)
+    {
+        if(bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+        // Scale a 32 bit value up by the bound and keep the top half,
+        // rejecting the few values which would bias the result.
+        long product = (nextLong() >>> 32) * bound;
+        int low = (int) product;
+        if(Integer.compareUnsigned(low, bound) < 0) {
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while(Integer.compareUnsigned(low, threshold) < 0) {
+                product = (nextLong() >>> 32) * bound;
+                low = (int) product;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    /**
+     * @return A uniformly distributed value between 0.0 (inclusive)
+     *         and 1.0 (exclusive).
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return A random boolean value.
+     */
+    public boolean nextBoolean()
+    {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Fill an array with uniformly distributed values between
+     * 0.0 (inclusive) and 1.0 (exclusive).
+     * @param values The array to fill.
+     */
+    public void nextDoubles(double[] values)
+    {
+        for(int i = 0; i < values.length; i++) {
+            values[i] = nextDouble();
+        }
+    }
+
+    /**
+     * Generate the next buffer full of values.
+     */
+    private void fill()
+    {
+        long s = state;
+        for(int i = 0; i < BUFFER_SIZE; i++) {
+            s += GOLDEN_GAMMA;
+            buffer[i] = mix(s);
+        }
+        state = s;
+        position = 0;
+    }
+
+    /**
+     * Scramble a number (the SplitMix64 finaliser).
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return The seed for the next stream created without one.
+     */
+    private static synchronized long nextDefaultSeed()
+    {
+        return SEED + GOLDEN_GAMMA * defaultSeeds++;
     }
 
     /**
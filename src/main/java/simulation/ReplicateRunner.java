@@ -0,0 +1,204 @@
+package simulation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many replicates of one simulation, each with its own random
+ * stream, and collects the statistics of their population counts.
+ * 
+ * The replicates are run on a fixed number of threads, each running
+ * one simulation at a time, so no more than that many simulations
+ * are ever in memory. The replicates are merged into the shared
+ * ReplicateStats in replicate order, so the outcome depends only on
+ * the seed and not on the number of threads. A replicate finished
+ * before an earlier one is held until that one is merged, and its
+ * thread moves on; a thread waits only when it would start a replicate
+ * too far ahead of the next to merge, so that the counts held are
+ * bounded by the number of threads.
+ */
+public class ReplicateRunner
+{
+    // The quantiles estimated unless others are chosen.
+    public static final double[] DEFAULT_QUANTILES = { 0.05, 0.5, 0.95 };
+
+    // The settings of each kind of actor.
+    private final List<Dictionary> dict;
+    // The size of the field.
+    private final int depth, width;
+    // The stream the seeds of the replicates are derived from.
+    private final Randomizer seeds;
+    // The number of replicates run at once.
+    private final int threads;
+    // The quantiles to estimate.
+    private double[] quantiles;
+
+    // The number of replicates, from the next one to merge on, which
+    // may be started or held.
+    private final int window;
+
+    // The statistics being collected, and the next replicate to merge.
+    private ReplicateStats stats;
+    private int nextToMerge;
+    // The counts of finished replicates waiting for earlier ones.
+    private Map<Integer, SimulatorStats> held;
+    // The first failure of a replicate, after which no more are merged.
+    private Throwable failure;
+
+    /**
+     * Create a runner for simulations of the given settings.
+     * @param dict The settings of each kind of actor.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The seed all replicate seeds are derived from.
+     * @param threads The number of replicates to run at once.
+     */
+    public ReplicateRunner(List<Dictionary> dict, int depth, int width, long seed, int threads)
+    {
+        if(threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.dict = dict;
+        this.depth = depth;
+        this.width = width;
+        seeds = new Randomizer(seed);
+        this.threads = threads;
+        window = 2 * threads;
+        quantiles = DEFAULT_QUANTILES;
+    }
+
+    /**
+     * Choose the quantiles to estimate.
+     * @param quantiles The quantiles, each between 0 and 1.
+     */
+    public void setQuantiles(double[] quantiles)
+    {
+        this.quantiles = quantiles.clone();
+    }
+
+    /**
+     * Run the replicates. Every replicate runs for the full number
+     * of steps, even after species have died out, so that every step
+     * has a count from every replicate.
+     * @param replicates The number of replicates.
+     * @param steps The number of steps of each replicate.
+     * @return The statistics of the counts, over all the replicates.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public ReplicateStats run(final int replicates, final int steps) throws InterruptedException
+    {
+        stats = new ReplicateStats(Species.animalClasses(), steps + 1, quantiles);
+        nextToMerge = 0;
+        held = new HashMap<Integer, SimulatorStats>();
+        failure = null;
+        final AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for(int i = 0; i < Math.min(threads, replicates); i++) {
+            workers.add(new Callable<Void>() {
+                public Void call() throws InterruptedException {
+                    int replicate = next.getAndIncrement();
+                    while(replicate < replicates) {
+                        awaitTurn(replicate);
+                        try {
+                            merge(replicate, runReplicate(replicate, steps));
+                        }
+                        catch(RuntimeException | Error e) {
+                            failed(e);
+                            throw e;
+                        }
+                        replicate = next.getAndIncrement();
+                    }
+                    return null;
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            for(Future<Void> result : executor.invokeAll(workers)) {
+                result.get();
+            }
+        }
+        catch(ExecutionException e) {
+            // Report the first failure, not the workers it stopped.
+            throw new IllegalStateException("A replicate failed", failure != null ? failure : e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return stats;
+    }
+
+    /**
+     * Run one replicate.
+     * @param replicate The number of the replicate.
+     * @param steps The number of steps to run.
+     * @return The counts of the replicate.
+     */
+    private SimulatorStats runReplicate(int replicate, int steps)
+    {
+        SimulationEngine engine = new SimulationEngine(dict, depth, width,
+                                                       new Randomizer(seeds.deriveSeed(replicate)));
+        for(int step = 0; step < steps; step++) {
+            engine.simulateOneStep();
+        }
+        return engine.getStatistics();
+    }
+
+    /**
+     * Wait until a replicate is near enough to the next one to merge
+     * to be started.
+     * @param replicate The number of the replicate.
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws IllegalStateException If a replicate has failed, so
+     *         that this one could never be merged.
+     */
+    private synchronized void awaitTurn(int replicate) throws InterruptedException
+    {
+        while(replicate >= nextToMerge + window && failure == null) {
+            wait();
+        }
+        if(failure != null) {
+            throw new IllegalStateException("An earlier replicate failed", failure);
+        }
+    }
+
+    /**
+     * Merge the counts of a replicate and of any held replicates
+     * which follow it, or hold them until all earlier replicates
+     * have been merged.
+     * @param replicate The number of the replicate.
+     * @param run The counts of the replicate.
+     */
+    private synchronized void merge(int replicate, SimulatorStats run)
+    {
+        if(failure != null) {
+            return;
+        }
+        held.put(replicate, run);
+        while((run = held.remove(nextToMerge)) != null) {
+            stats.merge(run);
+            nextToMerge++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Record that a replicate has failed, and wake the workers
+     * waiting to start, which can now never be merged.
+     * @param cause The failure.
+     */
+    private synchronized void failed(Throwable cause)
+    {
+        if(failure == null) {
+            failure = cause;
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,224 @@
+package simulation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * The statistics of the population counts of many replicate runs of
+ * one simulation: for every step and species, the mean, variance and
+ * chosen quantiles of the counts across the runs. Runs are merged in
+ * one at a time, and the memory used depends on the number of steps
+ * and species only, not on the number of runs.
+ */
+public class ReplicateStats
+{
+    // The animal classes, in the order of the arrays below.
+    private final Set<Class> animalClasses;
+    private final Class[] classes;
+    // The number of steps recorded, including step zero.
+    private final int steps;
+    // The running mean and sum of squared differences from the mean
+    // of each species at each step (Welford's method).
+    private final double[][] means, squares;
+    // The quantile estimates of each species, one sketch per quantile.
+    private final QuantileSketch[][] quantiles;
+    // The number of runs merged.
+    private int replicates;
+
+    /**
+     * Create empty statistics.
+     * @param animalClasses The animal classes counted.
+     * @param steps The number of steps of each run, including step zero.
+     * @param quantiles The quantiles to estimate, each between 0 and 1.
+     */
+    public ReplicateStats(Set<Class> animalClasses, int steps, double[] quantiles)
+    {
+        this.animalClasses = animalClasses;
+        classes = animalClasses.toArray(new Class[animalClasses.size()]);
+        this.steps = steps;
+        means = new double[classes.length][steps];
+        squares = new double[classes.length][steps];
+        this.quantiles = new QuantileSketch[classes.length][quantiles.length];
+        for(int i = 0; i < classes.length; i++) {
+            for(int q = 0; q < quantiles.length; q++) {
+                this.quantiles[i][q] = new QuantileSketch(steps, quantiles[q]);
+            }
+        }
+    }
+
+    /**
+     * Merge in the counts of one run.
+     * @param run The statistics of the run, with at least as many steps.
+     */
+    void merge(SimulatorStats run)
+    {
+        replicates++;
+        for(int i = 0; i < classes.length; i++) {
+            IntSeries counts = run.getCounts(classes[i]);
+            double[] mean = means[i];
+            double[] square = squares[i];
+            for(int q = 0; q < quantiles[i].length; q++) {
+                quantiles[i][q].nextRound();
+            }
+            for(int step = 0; step < steps; step++) {
+                int count = counts.get(step);
+                double delta = count - mean[step];
+                mean[step] += delta / replicates;
+                square[step] += delta * (count - mean[step]);
+                for(int q = 0; q < quantiles[i].length; q++) {
+                    quantiles[i][q].add(step, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of runs merged.
+     */
+    public int getReplicates()
+    {
+        return replicates;
+    }
+
+    /**
+     * @return The number of steps recorded, including step zero.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @return The animal classes counted.
+     */
+    public Set<Class> getAnimalClasses()
+    {
+        return animalClasses;
+    }
+
+    /**
+     * Return the mean count of a species at a step.
+     * @param animalClass The class of the animal.
+     * @param step The step.
+     * @return The mean count over the runs.
+     */
+    public double getMean(Class animalClass, int step)
+    {
+        return means[indexOf(animalClass)][step];
+    }
+
+    /**
+     * Return the variance of the count of a species at a step.
+     * @param animalClass The class of the animal.
+     * @param step The step.
+     * @return The sample variance over the runs, or NaN for fewer than two.
+     */
+    public double getVariance(Class animalClass, int step)
+    {
+        if(replicates < 2) {
+            return Double.NaN;
+        }
+        return squares[indexOf(animalClass)][step] / (replicates - 1);
+    }
+
+    /**
+     * @return The number of quantiles estimated.
+     */
+    public int getQuantileCount()
+    {
+        return quantiles.length > 0 ? quantiles[0].length : 0;
+    }
+
+    /**
+     * @param q The index of a quantile.
+     * @return The quantile, between 0 and 1.
+     */
+    public double getQuantile(int q)
+    {
+        return quantiles[0][q].getQuantile();
+    }
+
+    /**
+     * Return an estimate of a quantile of the count of a species at a step.
+     * @param animalClass The class of the animal.
+     * @param q The index of the quantile.
+     * @param step The step.
+     * @return The estimated quantile over the runs.
+     */
+    public double getQuantile(Class animalClass, int q, int step)
+    {
+        return quantiles[indexOf(animalClass)][q].get(step);
+    }
+
+    /**
+     * @return The mean counts, rounded, as the statistics of a single
+     *         run, to be drawn by a SimulatorGraph.
+     */
+    public SimulatorStats getMeanStats()
+    {
+        SimulatorStats stats = new SimulatorStats(animalClasses);
+        int[] counts = new int[classes.length];
+        for(int step = 0; step < steps; step++) {
+            for(int i = 0; i < classes.length; i++) {
+                counts[i] = (int) Math.round(means[i][step]);
+            }
+            stats.addCounts(counts);
+        }
+        return stats;
+    }
+
+    /**
+     * Write the statistics as a table of comma separated values, one
+     * line per step: the step, and for each species the mean, variance
+     * and quantiles of its count.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeTable(Path file) throws IOException
+    {
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        try {
+            out.print("step");
+            for(Class animalClass : classes) {
+                String name = animalClass.getSimpleName();
+                out.print("," + name + ".mean," + name + ".variance");
+                for(int q = 0; q < getQuantileCount(); q++) {
+                    out.print("," + name + ".q" + getQuantile(q));
+                }
+            }
+            out.println();
+            for(int step = 0; step < steps; step++) {
+                out.print(step);
+                for(int i = 0; i < classes.length; i++) {
+                    out.print("," + means[i][step] + "," + getVariance(classes[i], step));
+                    for(int q = 0; q < quantiles[i].length; q++) {
+                        out.print("," + quantiles[i][q].get(step));
+                    }
+                }
+                out.println();
+            }
+        }
+        finally {
+            out.close();
+        }
+        if(out.checkError()) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * @return The index of an animal class in the arrays.
+     */
+    private int indexOf(Class animalClass)
+    {
+        for(int i = 0; i < classes.length; i++) {
+            if(classes[i] == animalClass) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not counted: " + animalClass.getName());
+    }
+}
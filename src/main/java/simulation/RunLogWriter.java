@@ -0,0 +1,267 @@
+package simulation;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An observer which records a run as a stream of events, so that it
+ * can be audited and shown again later by a RunReplay without running
+ * the actors. Every step is written as the births, deaths, moves and
+ * predation that happened in it, and every so many steps a keyframe
+ * with the whole species grid is written as well, from which a replay
+ * can start.
+ *
+ * The file starts with a header of big-endian ints:
+ * <pre>
+ *   MAGIC ("PPRL"), VERSION, depth, width
+ * </pre>
+ * followed by records, each starting with a tag byte:
+ * <pre>
+ *   STEP      varint step, varint number of events, then the events
+ *   KEYFRAME  varint step, varint length in bytes of what follows,
+ *             varint number of runs, then for each run of positions
+ *             of one species, row by row: the species byte and a
+ *             varint length
+ * </pre>
+ * A keyframe of a step follows the events of that step. An event is a
+ * byte holding its type (bits 0-1), species (bits 2-4) and, for EAT,
+ * the species of the predator (bits 5-7), then the position of the
+ * event (row * width + col) as a zigzag varint of its difference from
+ * the position of the previous event of the step; a MOVE is followed
+ * by the difference from there to where it moved, as a zigzag varint.
+ * Closing the writer adds an index of the keyframes:
+ * <pre>
+ *   byte INDEX, then int number of keyframes, and for each, int step
+ *   and long offset of its record; then long offset of the index,
+ *   int last step and int MAGIC
+ * </pre>
+ */
+public class RunLogWriter implements SimulationObserver, Closeable
+{
+    // Identifies the file format.
+    public static final int MAGIC = 0x5050524C;
+    // The version of the file format.
+    public static final int VERSION = 1;
+    // The tags of the records.
+    static final byte STEP = 1;
+    static final byte KEYFRAME = 2;
+    static final byte INDEX = 3;
+
+    // The simulation recorded.
+    private final SimulationEngine engine;
+    // The file being written.
+    private final OutputStream out;
+    // The width of the field, for numbering positions.
+    private final int width;
+    // The number of steps between keyframes.
+    private final int keyframeInterval;
+    // The species grid, for writing keyframes.
+    private final byte[] species;
+    // The record being encoded.
+    private byte[] record;
+    private int length;
+    // The offset in the file of the next record.
+    private long offset;
+    // The step and offset of each keyframe.
+    private int[] keyframeSteps;
+    private long[] keyframeOffsets;
+    private int keyframes;
+    // The latest step recorded, or -1 if none has been.
+    private int lastStep;
+
+    /**
+     * Create a writer recording a simulation to a file, replacing any
+     * existing one. Recording starts with the next step; a keyframe is
+     * written for it whatever the interval.
+     * @param engine The simulation to record.
+     * @param file The file to write.
+     * @param keyframeInterval The number of steps between keyframes.
+     * @throws IOException If the file cannot be opened.
+     */
+    public RunLogWriter(SimulationEngine engine, Path file, int keyframeInterval) throws IOException
+    {
+        if(keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.engine = engine;
+        this.keyframeInterval = keyframeInterval;
+        Field field = engine.getField();
+        width = field.getWidth();
+        species = new byte[field.getDepth() * width];
+        record = new byte[4096];
+        keyframeSteps = new int[16];
+        keyframeOffsets = new long[16];
+        lastStep = -1;
+        out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        putInt(MAGIC);
+        putInt(VERSION);
+        putInt(field.getDepth());
+        putInt(width);
+        flushRecord();
+        engine.setRecordEvents(true);
+    }
+
+    /**
+     * Write the events of a step, and a keyframe if one is due.
+     */
+    public void stepCompleted(int step, Field field, FieldStats stats)
+    {
+        EventBuffer events = engine.getEvents();
+        put(STEP);
+        putVarint(step);
+        putVarint(events.size());
+        int last = 0;
+        for(int i = 0; i < events.size(); i++) {
+            int type = events.getType(i);
+            put((byte) (type | events.getSpecies(i) << 2 | events.getPredator(i) << 5));
+            int position = events.getRow(i) * width + events.getCol(i);
+            putZigzag(position - last);
+            last = position;
+            if(type == EventBuffer.MOVE) {
+                int to = events.getToRow(i) * width + events.getToCol(i);
+                putZigzag(to - position);
+                last = to;
+            }
+        }
+        flushRecord();
+        if(lastStep < 0 || step % keyframeInterval == 0) {
+            writeKeyframe(step, field);
+        }
+        lastStep = step;
+    }
+
+    /**
+     * Write the index and close the file. Recording is turned off.
+     * @throws IOException If the file cannot be written.
+     */
+    public void close() throws IOException
+    {
+        engine.setRecordEvents(false);
+        long indexOffset = offset;
+        put(INDEX);
+        putInt(keyframes);
+        for(int i = 0; i < keyframes; i++) {
+            putInt(keyframeSteps[i]);
+            putLong(keyframeOffsets[i]);
+        }
+        putLong(indexOffset);
+        putInt(lastStep);
+        putInt(MAGIC);
+        flushRecord();
+        out.close();
+    }
+
+    /**
+     * Write the species grid of the field, run-length encoded.
+     * @param step The step the field has reached.
+     * @param field The field.
+     */
+    private void writeKeyframe(int step, Field field)
+    {
+        if(keyframes == keyframeSteps.length) {
+            keyframeSteps = Arrays.copyOf(keyframeSteps, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeSteps[keyframes] = step;
+        keyframeOffsets[keyframes] = offset;
+        keyframes++;
+
+        field.copySpecies(species);
+        int runs = 0;
+        for(int i = 0; i < species.length; i++) {
+            if(i == 0 || species[i] != species[i - 1]) {
+                runs++;
+            }
+        }
+        // Encode the runs first, to know their length.
+        putVarint(runs);
+        int start = 0;
+        for(int i = 1; i <= species.length; i++) {
+            if(i == species.length || species[i] != species[start]) {
+                put(species[start]);
+                putVarint(i - start);
+                start = i;
+            }
+        }
+        byte[] runData = Arrays.copyOf(record, length);
+        length = 0;
+        put(KEYFRAME);
+        putVarint(step);
+        putVarint(runData.length);
+        for(byte b : runData) {
+            put(b);
+        }
+        flushRecord();
+    }
+
+    /**
+     * Write the record encoded so far, and start a new one.
+     */
+    private void flushRecord()
+    {
+        try {
+            out.write(record, 0, length);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Cannot write the run log", e);
+        }
+        offset += length;
+        length = 0;
+    }
+
+    /**
+     * Add a byte to the record.
+     */
+    private void put(byte value)
+    {
+        if(length == record.length) {
+            record = Arrays.copyOf(record, length * 2);
+        }
+        record[length++] = value;
+    }
+
+    /**
+     * Add a big-endian int to the record.
+     */
+    private void putInt(int value)
+    {
+        put((byte) (value >>> 24));
+        put((byte) (value >>> 16));
+        put((byte) (value >>> 8));
+        put((byte) value);
+    }
+
+    /**
+     * Add a big-endian long to the record.
+     */
+    private void putLong(long value)
+    {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * Encode a non-negative number in 7-bit groups, lowest first.
+     */
+    private void putVarint(int value)
+    {
+        while((value & ~0x7F) != 0) {
+            put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        put((byte) value);
+    }
+
+    /**
+     * Encode a signed number so that small magnitudes are short.
+     */
+    private void putZigzag(int value)
+    {
+        putVarint(value << 1 ^ value >> 31);
+    }
+}
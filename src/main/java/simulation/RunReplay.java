@@ -0,0 +1,280 @@
+package simulation;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import javax.swing.Timer;
+
+/**
+ * Plays back a run recorded by a RunLogWriter, without running any
+ * actors: the species grid is rebuilt from the nearest keyframe and
+ * then changed event by event. Seeking to a step only decodes the
+ * steps since the keyframe before it, and playing on decodes one
+ * step at a time, so replays run at many thousands of steps a second.
+ *
+ * The file is memory-mapped, so logs must be closed, and smaller than
+ * 2GB.
+ */
+public class RunReplay
+{
+    // The frame rate of play.
+    private static final int FRAME_RATE = 25;
+
+    // The log.
+    private final ByteBuffer log;
+    // The depth and width of the field.
+    private final int depth, width;
+    // The step and offset of each keyframe.
+    private final int[] keyframeSteps;
+    private final int[] keyframeOffsets;
+    // The offset of the index, where the records end.
+    private final int end;
+    // The last step recorded.
+    private final int lastStep;
+    // The field at the current step.
+    private final FieldSnapshot snapshot;
+    // The step the snapshot shows.
+    private int step;
+
+    /**
+     * Open a log for replay, at its first keyframe.
+     * @param file The log.
+     * @throws IOException If the file cannot be read or is not a closed log.
+     */
+    public RunReplay(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Run log too large to replay: " + file);
+            }
+            log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            channel.close();
+        }
+        int size = log.capacity();
+        if(size < 36 || log.getInt(0) != RunLogWriter.MAGIC || log.getInt(size - 4) != RunLogWriter.MAGIC) {
+            throw new IOException("Not a closed run log: " + file);
+        }
+        if(log.getInt(4) != RunLogWriter.VERSION) {
+            throw new IOException("Unsupported run log version " + log.getInt(4) + ": " + file);
+        }
+        depth = log.getInt(8);
+        width = log.getInt(12);
+        end = (int) log.getLong(size - 16);
+        lastStep = log.getInt(size - 8);
+        int keyframes = log.getInt(end + 1);
+        keyframeSteps = new int[keyframes];
+        keyframeOffsets = new int[keyframes];
+        for(int i = 0; i < keyframes; i++) {
+            keyframeSteps[i] = log.getInt(end + 5 + i * 12);
+            keyframeOffsets[i] = (int) log.getLong(end + 9 + i * 12);
+        }
+        if(keyframes == 0) {
+            throw new IOException("Run log has no steps: " + file);
+        }
+        snapshot = new FieldSnapshot(depth, width);
+        step = -1;
+        seek(keyframeSteps[0]);
+    }
+
+    /**
+     * @return The first step which can be shown.
+     */
+    public int getFirstStep()
+    {
+        return keyframeSteps[0];
+    }
+
+    /**
+     * @return The last step recorded.
+     */
+    public int getLastStep()
+    {
+        return lastStep;
+    }
+
+    /**
+     * @return The step shown.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The field at the step shown. The snapshot is changed in
+     *         place as the replay moves on.
+     */
+    public FieldSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Move to a step, from the keyframe before it.
+     * @param target The step, between the first and last steps.
+     */
+    public void seek(int target)
+    {
+        if(target < getFirstStep() || target > lastStep) {
+            throw new IllegalArgumentException("Step " + target + " is not in the log ("
+                                               + getFirstStep() + " to " + lastStep + ")");
+        }
+        int keyframe = Arrays.binarySearch(keyframeSteps, target);
+        if(keyframe < 0) {
+            keyframe = -keyframe - 2;
+        }
+        // Start from the current position if it is nearer.
+        if(target < step || step < keyframeSteps[keyframe]) {
+            log.position(keyframeOffsets[keyframe]);
+            readKeyframe();
+        }
+        while(step < target) {
+            next();
+        }
+    }
+
+    /**
+     * Move on to the next step.
+     * @return false if the last step is already shown.
+     */
+    public boolean next()
+    {
+        while(log.position() < end) {
+            byte tag = log.get();
+            if(tag == RunLogWriter.KEYFRAME) {
+                readVarint();
+                int length = readVarint();
+                log.position(log.position() + length);
+            }
+            else {
+                readStep();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Play the log into a view, from the step shown, at a given speed.
+     * Steps are skipped between frames as needed.
+     * @param view The view to show the field in.
+     * @param stepsPerSecond The speed of play.
+     * @return The timer playing the log, which may be stopped.
+     */
+    public Timer play(final SimulatorView view, int stepsPerSecond)
+    {
+        final double stepsPerFrame = (double) stepsPerSecond / FRAME_RATE;
+        Timer timer = new Timer(1000 / FRAME_RATE, new ActionListener() {
+            private double due;
+            public void actionPerformed(ActionEvent e) {
+                due += stepsPerFrame;
+                boolean more = true;
+                while(due >= 1 && more) {
+                    more = next();
+                    due--;
+                }
+                view.showStatus(snapshot);
+                if(!more) {
+                    ((Timer) e.getSource()).stop();
+                }
+            }
+        });
+        view.showStatus(snapshot);
+        timer.start();
+        return timer;
+    }
+
+    /**
+     * Rebuild the field from the keyframe record at the current position.
+     */
+    private void readKeyframe()
+    {
+        log.get();
+        step = readVarint();
+        readVarint();
+        byte[] species = snapshot.getSpecies();
+        int[] counts = snapshot.getCounts();
+        Arrays.fill(counts, 0);
+        int position = 0;
+        for(int runs = readVarint(); runs > 0; runs--) {
+            byte kind = log.get();
+            int length = readVarint();
+            Arrays.fill(species, position, position + length, kind);
+            counts[kind] += length;
+            position += length;
+        }
+        snapshot.setStep(step);
+    }
+
+    /**
+     * Apply the events of the step record at the current position,
+     * after its tag.
+     */
+    private void readStep()
+    {
+        step = readVarint();
+        byte[] species = snapshot.getSpecies();
+        int[] counts = snapshot.getCounts();
+        int last = 0;
+        for(int events = readVarint(); events > 0; events--) {
+            int header = log.get();
+            byte kind = (byte) (header >> 2 & 7);
+            int position = last + readZigzag();
+            last = position;
+            switch(header & 3) {
+                case EventBuffer.BIRTH:
+                    counts[species[position]]--;
+                    species[position] = kind;
+                    counts[kind]++;
+                    break;
+                case EventBuffer.DEATH:
+                case EventBuffer.EAT:
+                    counts[species[position]]--;
+                    species[position] = Species.EMPTY;
+                    counts[Species.EMPTY]++;
+                    break;
+                default:
+                    int to = position + readZigzag();
+                    last = to;
+                    counts[species[to]]--;
+                    counts[Species.EMPTY]++;
+                    species[to] = species[position];
+                    species[position] = Species.EMPTY;
+                    break;
+            }
+        }
+        snapshot.setStep(step);
+    }
+
+    /**
+     * @return The varint at the current position.
+     */
+    private int readVarint()
+    {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = log.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+        return value;
+    }
+
+    /**
+     * @return The zigzag varint at the current position.
+     */
+    private int readZigzag()
+    {
+        int value = readVarint();
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,80 @@
+package simulation;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size ring of samples, each a row of ints, passed from one
+ * thread to another without locks. One thread (the simulation) adds
+ * samples and one other thread (the display) removes them. Neither
+ * ever waits: if the ring is full the new sample is dropped, and
+ * counted, rather than hold up the simulation.
+ */
+public class SampleRing
+{
+    // The number of ints in each sample.
+    private final int width;
+    // The samples, one after another; the capacity is a power of two.
+    private final int[] samples;
+    private final int mask;
+    // The number of samples ever added, and ever removed. Each is only
+    // changed by one thread and is published with an ordered write.
+    private final AtomicLong added, removed;
+    // The number of samples dropped because the ring was full.
+    private volatile long dropped;
+
+    /**
+     * Create an empty ring.
+     * @param capacity The most samples held; rounded up to a power of two.
+     * @param width The number of ints in each sample.
+     */
+    public SampleRing(int capacity, int width)
+    {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.width = width;
+        samples = new int[size * width];
+        mask = size - 1;
+        added = new AtomicLong();
+        removed = new AtomicLong();
+    }
+
+    /**
+     * Add a sample, if there is room. Called by the adding thread only.
+     * @param sample The sample, of the ring's width.
+     * @return true if the sample was added, false if it was dropped.
+     */
+    public boolean offer(int[] sample)
+    {
+        long next = added.get();
+        if(next - removed.get() > mask) {
+            dropped++;
+            return false;
+        }
+        System.arraycopy(sample, 0, samples, (int) (next & mask) * width, width);
+        added.lazySet(next + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest sample, if there is one. Called by the
+     * removing thread only.
+     * @param sample Receives the sample, of the ring's width.
+     * @return true if a sample was removed, false if the ring was empty.
+     */
+    public boolean poll(int[] sample)
+    {
+        long next = removed.get();
+        if(next == added.get()) {
+            return false;
+        }
+        System.arraycopy(samples, (int) (next & mask) * width, sample, 0, width);
+        removed.lazySet(next + 1);
+        return true;
+    }
+
+    /**
+     * @return The number of samples dropped because the ring was full.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+}
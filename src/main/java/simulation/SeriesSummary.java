@@ -0,0 +1,184 @@
+package simulation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A multi-resolution summary of an IntSeries: the minimum and maximum
+ * of every aligned block of 2^k values, for every k from BASE_BITS up.
+ * With it the minimum and maximum of any range of the series can be
+ * found by combining a few blocks of each size, in time that grows
+ * with the logarithm of the length of the range rather than with the
+ * length itself. This is what lets a graph of a long series be drawn
+ * at any zoom in time proportional to its width in pixels.
+ * 
+ * The summary is brought up to date with the series by update, which
+ * only looks at the values added since the last update. If the series
+ * discards its oldest values, it must be updated after every value
+ * added, so that no value is discarded before it is summarised.
+ */
+public class SeriesSummary
+{
+    // The smallest blocks summarised hold 2^BASE_BITS values;
+    // shorter stretches are read from the series itself.
+    private static final int BASE_BITS = 4;
+    private static final int BASE_SIZE = 1 << BASE_BITS;
+
+    // The series summarised.
+    private final IntSeries series;
+    // The minimum and maximum of each block, by level: the blocks of
+    // level k hold 2^(BASE_BITS + k) values.
+    private final List<IntSeries> mins, maxs;
+    // The number of values of the series covered by whole blocks.
+    private int covered;
+
+    /**
+     * Create a summary of a series.
+     * @param series The series to summarise.
+     */
+    public SeriesSummary(IntSeries series)
+    {
+        this.series = series;
+        mins = new ArrayList<IntSeries>();
+        maxs = new ArrayList<IntSeries>();
+        // Start at the first whole block still kept by the series.
+        covered = series.getStart() + BASE_SIZE - 1 & ~(BASE_SIZE - 1);
+        update();
+    }
+
+    /**
+     * @return The series summarised.
+     */
+    public IntSeries getSeries()
+    {
+        return series;
+    }
+
+    /**
+     * Summarise the values added to the series since the last update,
+     * and release the summary of any values the series has discarded.
+     */
+    public void update()
+    {
+        if(covered < series.getStart()) {
+            // The series skipped values before they were summarised.
+            covered = series.getStart() + BASE_SIZE - 1 & ~(BASE_SIZE - 1);
+        }
+        while(covered + BASE_SIZE <= series.size()) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for(int i = covered; i < covered + BASE_SIZE; i++) {
+                int value = series.get(i);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            add(0, covered >> BASE_BITS, min, max);
+            covered += BASE_SIZE;
+        }
+        int start = series.getStart();
+        for(int level = 0; level < mins.size(); level++) {
+            mins.get(level).discardBefore(start >> (BASE_BITS + level));
+            maxs.get(level).discardBefore(start >> (BASE_BITS + level));
+        }
+    }
+
+    /**
+     * Find the minimum and maximum of a range of the series.
+     * The summary should be up to date.
+     * @param from The position of the first value.
+     * @param to The position after the last value.
+     * @param minMax Receives the minimum at index 0 and the maximum at
+     *               index 1; they are left unchanged for an empty range.
+     */
+    public void range(int from, int to, int[] minMax)
+    {
+        int min = minMax[0];
+        int max = minMax[1];
+        if(from < to) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+        }
+        // Values beyond the last whole block, and before the first
+        // whole block of the range, come from the series.
+        int end = Math.max(from, Math.min(to, covered));
+        for(int i = end; i < to; i++) {
+            min = Math.min(min, series.get(i));
+            max = Math.max(max, series.get(i));
+        }
+        int lo = from;
+        while(lo < end && (lo & (BASE_SIZE - 1)) != 0) {
+            min = Math.min(min, series.get(lo));
+            max = Math.max(max, series.get(lo));
+            lo++;
+        }
+        int hi = end;
+        while(hi > lo && (hi & (BASE_SIZE - 1)) != 0) {
+            hi--;
+            min = Math.min(min, series.get(hi));
+            max = Math.max(max, series.get(hi));
+        }
+        // Whole blocks: at each level take the odd block at either end,
+        // and leave the rest to the level above.
+        lo >>= BASE_BITS;
+        hi >>= BASE_BITS;
+        for(int level = 0; lo < hi; level++) {
+            IntSeries levelMins = mins.get(level);
+            IntSeries levelMaxs = maxs.get(level);
+            if(level == mins.size() - 1) {
+                for(int block = lo; block < hi; block++) {
+                    min = Math.min(min, levelMins.get(block));
+                    max = Math.max(max, levelMaxs.get(block));
+                }
+                break;
+            }
+            if((lo & 1) != 0) {
+                min = Math.min(min, levelMins.get(lo));
+                max = Math.max(max, levelMaxs.get(lo));
+                lo++;
+            }
+            if((hi & 1) != 0) {
+                hi--;
+                min = Math.min(min, levelMins.get(hi));
+                max = Math.max(max, levelMaxs.get(hi));
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
+
+    /**
+     * Add the summary of a block, and of the block above it once both
+     * of its halves are known.
+     * @param level The level of the block.
+     * @param block The position of the block in its level.
+     * @param min The minimum of the block.
+     * @param max The maximum of the block.
+     */
+    private void add(int level, int block, int min, int max)
+    {
+        if(level == mins.size()) {
+            IntSeries levelMins = new IntSeries();
+            IntSeries levelMaxs = new IntSeries();
+            // Blocks before the first one are never read.
+            levelMins.skipTo(block);
+            levelMaxs.skipTo(block);
+            mins.add(levelMins);
+            maxs.add(levelMaxs);
+        }
+        IntSeries levelMins = mins.get(level);
+        IntSeries levelMaxs = maxs.get(level);
+        if(levelMins.size() < block) {
+            // The blocks in between cover discarded values only.
+            levelMins.skipTo(block);
+            levelMaxs.skipTo(block);
+        }
+        levelMins.add(min);
+        levelMaxs.add(max);
+        if((block & 1) != 0 && block > levelMins.getStart()) {
+            add(level + 1, block >> 1,
+                Math.min(min, levelMins.get(block - 1)),
+                Math.max(max, levelMaxs.get(block - 1)));
+        }
+    }
+}
@@ -0,0 +1,718 @@
+package simulation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The core of a predator-prey simulation: a field with its actors,
+ * stepped one step at a time, and the statistics collected along
+ * the way. The engine has no user interface; views follow its
+ * progress by registering a SimulationObserver. It can therefore
+ * run on machines without a display (java.awt.headless=true).
+ *
+ * Each phase of a step is timed, and the births and deaths of the
+ * actors counted, in the StepMetrics of the engine; each step is
+ * also a StepEvent for the flight recorder.
+ */
+public class SimulationEngine
+{
+    // Constants representing configuration information for the simulation.
+    // The default width for the grid.
+    public static final int DEFAULT_WIDTH = 120;
+    // The default depth of the grid.
+    public static final int DEFAULT_DEPTH = 80;
+    // The probability that a coyote will be created in any given grid position.
+    private static final double COYOTE_CREATION_PROBABILITY = 0.03;
+    // The probability that a fox will be created in any given grid position.
+    private static final double FOX_CREATION_PROBABILITY = 0.04;
+    // The probability that a rabbit will be created in any given grid position.
+    private static final double RABBIT_CREATION_PROBABILITY = 0.08;
+    // The probability that a hunter will be created in any given grid position.
+    private static final double HUNTER_CREATION_PROBABILITY = 0.02;
+
+    // The animals in the field.
+    private ActorStore actors;
+    // The current state of the field.
+    private Field field;
+    // The current step of the simulation.
+    private int step;
+    // The settings of each kind of actor, indexed as in Control.
+    private List<Dictionary> dict;
+    // The animal classes which take part in the simulation.
+    private Set<Class> animalClasses;
+    // The population counts after the latest step.
+    private FieldStats stats;
+    // Scratch space for counting the population.
+    private int[] counts;
+    // The series of animal counts during simulation.
+    private SimulatorStats statistics;
+    // The number of latest steps kept in the statistics.
+    private int statsWindow;
+    // The random stream of this simulation.
+    private Randomizer rand;
+    // The working state reused by the actors at every step.
+    private StepContext context;
+    // The timings and counts of the steps.
+    private StepMetrics metrics;
+    // The time taken by the latest census, in nanoseconds.
+    private long censusTime;
+    // The part of the field populated at a reset.
+    private int areaTop, areaLeft, areaDepth, areaWidth;
+    // The probability of creating each species at a location when
+    // populating, indexed by species id.
+    private double[] creationProbability;
+    // The observers notified after every step.
+    private List<SimulationObserver> observers;
+    // Whether the actors act species by species.
+    private boolean phased;
+    // The slots of the actors grouped by species, and where each
+    // species starts, when acting species by species.
+    private int[] bySpecies;
+    private int[] speciesStart;
+
+    /**
+     * Construct a simulation field with default size.
+     * @param dict The settings of each kind of actor.
+     */
+    public SimulationEngine(List<Dictionary> dict)
+    {
+        this(dict, DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * Construct a simulation field of the given size.
+     * @param dict The settings of each kind of actor.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public SimulationEngine(List<Dictionary> dict, int depth, int width)
+    {
+        this(dict, depth, width, new Randomizer());
+    }
+
+    /**
+     * Construct a simulation field of the given size, drawing
+     * all random numbers from the given stream. Runs with streams
+     * of the same seed have the same outcome.
+     * @param dict The settings of each kind of actor.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param rand The random stream of this simulation.
+     */
+    public SimulationEngine(List<Dictionary> dict, int depth, int width, Randomizer rand)
+    {
+        this(dict, new FlatField(depth, width), rand);
+    }
+
+    /**
+     * Construct a simulation in the given empty field, drawing all
+     * random numbers from the given stream. A ChunkedField makes
+     * forking the simulation cheap.
+     * @param dict The settings of each kind of actor.
+     * @param field The field to simulate in.
+     * @param rand The random stream of this simulation.
+     */
+    public SimulationEngine(List<Dictionary> dict, Field field, Randomizer rand)
+    {
+        this(dict, field, rand, new Location(0, 0), field.getDepth(), field.getWidth());
+    }
+
+    /**
+     * Construct a simulation in the given empty field, populating only
+     * a part of it. The actors may leave that part as they move and
+     * breed. With a SparseField this lets a small population live in a
+     * very large world, without the cost of visiting all of it.
+     * @param dict The settings of each kind of actor.
+     * @param field The field to simulate in.
+     * @param rand The random stream of this simulation.
+     * @param corner The top left location of the part to populate.
+     * @param areaDepth The depth of the part to populate.
+     * @param areaWidth The width of the part to populate.
+     */
+    public SimulationEngine(List<Dictionary> dict, Field field, Randomizer rand,
+                            Location corner, int areaDepth, int areaWidth)
+    {
+        if(corner.getRow() < 0 || corner.getCol() < 0 || areaDepth < 0 || areaWidth < 0 ||
+           corner.getRow() + areaDepth > field.getDepth() ||
+           corner.getCol() + areaWidth > field.getWidth()) {
+            throw new IllegalArgumentException("Area outside the field: " + corner + " "
+                                               + areaDepth + "x" + areaWidth);
+        }
+        areaTop = corner.getRow();
+        areaLeft = corner.getCol();
+        this.areaDepth = areaDepth;
+        this.areaWidth = areaWidth;
+        this.dict = dict;
+        this.rand = rand;
+        this.field = field;
+        actors = new ActorStore();
+        animalClasses = Species.animalClasses();
+        stats = new FieldStats();
+        counts = new int[Species.COUNT];
+        metrics = new StepMetrics();
+        context = new StepContext(rand, metrics);
+        observers = new ArrayList<SimulationObserver>();
+        statsWindow = Integer.MAX_VALUE;
+        creationProbability = new double[Species.COUNT];
+        creationProbability[Species.RABBIT] = RABBIT_CREATION_PROBABILITY;
+        creationProbability[Species.FOX] = FOX_CREATION_PROBABILITY;
+        creationProbability[Species.COYOTE] = COYOTE_CREATION_PROBABILITY;
+        creationProbability[Species.HUNTER] = HUNTER_CREATION_PROBABILITY;
+        bySpecies = new int[0];
+        speciesStart = new int[Species.COUNT + 1];
+
+        // Setup a valid starting point.
+        reset();
+    }
+
+    /**
+     * Construct a branch of a simulation, in its current state.
+     * @param trunk The simulation to branch from.
+     * @param dict The settings of each kind of actor in the branch.
+     * @param rand The random stream of the branch.
+     */
+    private SimulationEngine(SimulationEngine trunk, List<Dictionary> dict, Randomizer rand)
+    {
+        this.dict = dict;
+        this.rand = rand;
+        field = trunk.field.fork();
+        actors = trunk.actors.copy(field);
+        for(int slot = 0; slot < actors.size(); slot++) {
+            applySettings(actors.get(slot));
+        }
+        animalClasses = trunk.animalClasses;
+        stats = new FieldStats();
+        counts = new int[Species.COUNT];
+        metrics = new StepMetrics();
+        context = new StepContext(rand, metrics);
+        observers = new ArrayList<SimulationObserver>();
+        statsWindow = trunk.statsWindow;
+        areaTop = trunk.areaTop;
+        areaLeft = trunk.areaLeft;
+        areaDepth = trunk.areaDepth;
+        areaWidth = trunk.areaWidth;
+        creationProbability = trunk.creationProbability.clone();
+        phased = trunk.phased;
+        bySpecies = new int[0];
+        speciesStart = new int[Species.COUNT + 1];
+        resume(trunk.step, trunk.statistics.copy());
+    }
+
+    /**
+     * Fork the simulation in its current state into a branch which
+     * continues independently, for example with other settings or
+     * another random stream. The branch shares the counts collected
+     * so far, and, in a ChunkedField, every part of the field which
+     * neither simulation changes; forking a FlatField copies it.
+     * Branches of one simulation may be run on different threads.
+     * The branch has no observers, and is always run serially.
+     * It has metrics of its own, starting from zero.
+     * @param dict The settings of each kind of actor in the branch,
+     *             which are applied to the actors alive now as well.
+     * @param rand The random stream of the branch.
+     * @return The branch.
+     */
+    public SimulationEngine fork(List<Dictionary> dict, Randomizer rand)
+    {
+        return new SimulationEngine(this, dict, rand);
+    }
+
+    /**
+     * Give an actor the settings of its species in this simulation.
+     * @param actor The actor.
+     */
+    private void applySettings(Actor actor)
+    {
+        Dictionary d = dict.get(actor.getSpecies() - Species.RABBIT);
+        actor.setMaxAge(d.getMaxAge());
+        if(actor instanceof Animal) {
+            Animal animal = (Animal) actor;
+            animal.setBreedAge(d.getBreedAge());
+            animal.setMaxLitter(d.getMaxLitter());
+        }
+        else if(actor instanceof Hunter) {
+            ((Hunter) actor).setHuntAge(d.getHuntAge());
+        }
+    }
+
+    /**
+     * Register an observer to be notified after every step.
+     * @param observer The observer.
+     */
+    public void addObserver(SimulationObserver observer)
+    {
+        observers.add(observer);
+    }
+
+    /**
+     * Limit the statistics kept in memory to the latest steps.
+     * To keep the whole history of a long run, record it with a
+     * StatsSink instead.
+     * @param window The number of latest steps to keep at least.
+     */
+    public void setStatsWindow(int window)
+    {
+        statistics.setWindow(window);
+        statsWindow = window;
+    }
+
+    /**
+     * Stop notifying an observer.
+     * @param observer The observer.
+     */
+    public void removeObserver(SimulationObserver observer)
+    {
+        observers.remove(observer);
+    }
+
+    /**
+     * Run the simulation from its current state for the given number of steps.
+     * Stop before the given number of steps if it ceases to be viable.
+     * @param numSteps The number of steps to run for.
+     * @return The number of steps actually run.
+     */
+    public int run(int numSteps)
+    {
+        int steps = 0;
+        while(steps < numSteps && isViable()) {
+            simulateOneStep();
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Run the simulation from its current state for a single step.
+     * Iterate over the whole field updating the state of each
+     * fox and rabbit.
+     */
+    public void simulateOneStep()
+    {
+        StepEvent event = new StepEvent();
+        event.begin();
+        step++;
+        context.getEvents().clear();
+        int size = actors.size();
+        long start = System.nanoTime();
+        actAll();
+        long acted = System.nanoTime();
+        actors.removeDead();
+        int survivors = actors.size();
+        long removed = System.nanoTime();
+        // Add the newly born animals to the main store.
+        int born = adoptBirths();
+        long adopted = System.nanoTime();
+        metrics.addTime(StepMetrics.ACT, acted - start);
+        metrics.addTime(StepMetrics.REMOVE_DEAD, removed - acted);
+        metrics.addTime(StepMetrics.BIRTHS, adopted - removed);
+        metrics.born(born);
+        stepCompleted();
+        metrics.addTime(StepMetrics.CENSUS, censusTime);
+        metrics.stepped();
+        if(event.shouldCommit()) {
+            event.step = step;
+            event.actors = size;
+            event.actTime = acted - start;
+            event.removeDeadTime = removed - acted;
+            event.birthTime = adopted - removed;
+            event.censusTime = censusTime;
+            event.born = born;
+            event.died = size - survivors;
+            event.commit();
+        }
+    }
+
+    /**
+     * Let every actor act once. Newborns are collected in the
+     * context, to be added to the actors once the dead ones have
+     * been removed; they will act from the next step on.
+     */
+    protected void actAll()
+    {
+        // Let all rabbits act. Newborn animals are collected in the
+        // context, so the number of actors does not change meanwhile.
+        int size = actors.size();
+        EventBuffer events = context.getEvents();
+        if(phased) {
+            actBySpecies(size, events);
+        }
+        else if(events.isEnabled()) {
+            for(int slot = 0; slot < size; slot++) {
+                long from = actors.getLocation(slot);
+                actors.get(slot).act(context);
+                events.acted(actors.getSpecies(slot), from, actors.getLocation(slot));
+            }
+        }
+        else {
+            for(int slot = 0; slot < size; slot++) {
+                actors.get(slot).act(context);
+            }
+        }
+    }
+
+    /**
+     * Add the actors born during the step to the actors.
+     * @return The number of actors born, including any which were
+     *         eaten before the end of the step.
+     */
+    protected int adoptBirths()
+    {
+        int born = context.getBirths().size();
+        actors.adopt(context.getBirths());
+        return born;
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        return stats.isViable(field);
+    }
+
+    /**
+     * Reset the simulation to a starting position.
+     */
+    public void reset()
+    {
+        step = 0;
+        context.getEvents().clear();
+        actors.clear();
+        statistics = new SimulatorStats(animalClasses);
+        statistics.setWindow(statsWindow);
+        populate();
+        stepCompleted();
+    }
+
+    /**
+     * Count the population, record it and tell the observers.
+     */
+    private void stepCompleted()
+    {
+        long start = System.nanoTime();
+        stats.reset();
+        Arrays.fill(counts, 0);
+        field.population(counts);
+        stats.addCounts(counts);
+        stats.countFinished();
+        censusTime = System.nanoTime() - start;
+        statistics.addStats(stats);
+        for(SimulationObserver observer : observers) {
+            observer.stepCompleted(step, field, stats);
+        }
+    }
+
+    /**
+     * Randomly populate the field, or the part of it chosen when
+     * the engine was created, with foxes and rabbits.
+     */
+    private void populate()
+    {
+        field.clear();
+        // The new animals are collected in the context, as births are.
+        for(int row = areaTop; row < areaTop + areaDepth; row++) {
+            for(int col = areaLeft; col < areaLeft + areaWidth; col++) {
+                if(rand.nextDouble() <= creationProbability[Species.HUNTER]) {
+                    createActor(Species.HUNTER, true, context, new Location(row, col));
+                }
+                else if(rand.nextDouble() <= creationProbability[Species.COYOTE]) {
+                    createActor(Species.COYOTE, true, context, new Location(row, col));
+                }
+                else if(rand.nextDouble() <= creationProbability[Species.FOX]) {
+                    createActor(Species.FOX, true, context, new Location(row, col));
+                }
+                else if(rand.nextDouble() <= creationProbability[Species.RABBIT]) {
+                    createActor(Species.RABBIT, true, context, new Location(row, col));
+                }
+                // else leave the location empty.
+            }
+        }
+        actors.adopt(context.getBirths());
+    }
+
+    /**
+     * Set the probability of creating an actor of a species at each
+     * location when the field is populated. Locations are offered to
+     * hunters first, then coyotes, foxes and rabbits, so each
+     * probability applies to the locations the species before it did
+     * not take. This takes effect at the next reset.
+     * @param species The species.
+     * @param probability The probability, from 0 to 1.
+     */
+    public void setCreationProbability(byte species, double probability)
+    {
+        if(species < Species.RABBIT || species > Species.HUNTER) {
+            throw new IllegalArgumentException("Not an actor species: " + species);
+        }
+        if(!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("Not a probability: " + probability);
+        }
+        creationProbability[species] = probability;
+    }
+
+    /**
+     * Choose whether the actors act in the order of the actor store,
+     * which mixes the species, or species by species: all rabbits,
+     * then all foxes, coyotes and hunters, each in store order. The
+     * rules the actors follow are the same either way, but acting
+     * species by species lets each species run in a loop of its own,
+     * which the compiler can specialise.
+     * @param phased Whether to act species by species.
+     */
+    public void setSpeciesPhased(boolean phased)
+    {
+        this.phased = phased;
+    }
+
+    /**
+     * @return Whether the actors act species by species.
+     */
+    public boolean isSpeciesPhased()
+    {
+        return phased;
+    }
+
+    /**
+     * Let the actors act species by species. Each species has its own
+     * loop, calling its own class, so that every call site sees one
+     * class only. Actors eaten earlier in the step are skipped. The
+     * time each species takes is added to the metrics.
+     * @param size The number of actors at the start of the step.
+     * @param events The buffer receiving the events of the step.
+     */
+    private void actBySpecies(int size, EventBuffer events)
+    {
+        groupBySpecies(size);
+        long start = System.nanoTime();
+        for(int i = speciesStart[Species.RABBIT]; i < speciesStart[Species.RABBIT + 1]; i++) {
+            int slot = bySpecies[i];
+            Rabbit rabbit = (Rabbit) actors.get(slot);
+            if(rabbit.isAlive()) {
+                long from = actors.getLocation(slot);
+                rabbit.act(context);
+                events.acted(Species.RABBIT, from, actors.getLocation(slot));
+            }
+        }
+        start = timeActing(Species.RABBIT, start);
+        for(int i = speciesStart[Species.FOX]; i < speciesStart[Species.FOX + 1]; i++) {
+            int slot = bySpecies[i];
+            Fox fox = (Fox) actors.get(slot);
+            if(fox.isAlive()) {
+                long from = actors.getLocation(slot);
+                fox.act(context);
+                events.acted(Species.FOX, from, actors.getLocation(slot));
+            }
+        }
+        start = timeActing(Species.FOX, start);
+        for(int i = speciesStart[Species.COYOTE]; i < speciesStart[Species.COYOTE + 1]; i++) {
+            int slot = bySpecies[i];
+            Coyote coyote = (Coyote) actors.get(slot);
+            if(coyote.isAlive()) {
+                long from = actors.getLocation(slot);
+                coyote.act(context);
+                events.acted(Species.COYOTE, from, actors.getLocation(slot));
+            }
+        }
+        start = timeActing(Species.COYOTE, start);
+        for(int i = speciesStart[Species.HUNTER]; i < speciesStart[Species.HUNTER + 1]; i++) {
+            int slot = bySpecies[i];
+            Hunter hunter = (Hunter) actors.get(slot);
+            if(hunter.isAlive()) {
+                long from = actors.getLocation(slot);
+                hunter.act(context);
+                events.acted(Species.HUNTER, from, actors.getLocation(slot));
+            }
+        }
+        timeActing(Species.HUNTER, start);
+    }
+
+    /**
+     * Add the time a species has taken to act to the metrics.
+     * @param species The species.
+     * @param start When it started acting, from System.nanoTime.
+     * @return When it finished, from System.nanoTime.
+     */
+    private long timeActing(byte species, long start)
+    {
+        long end = System.nanoTime();
+        metrics.addActTime(species, end - start);
+        return end;
+    }
+
+    /**
+     * Sort the slots of the actors by species, keeping store order
+     * within each species.
+     * @param size The number of actors.
+     */
+    private void groupBySpecies(int size)
+    {
+        if(bySpecies.length < size) {
+            bySpecies = new int[size + size / 2];
+        }
+        Arrays.fill(speciesStart, 0);
+        for(int slot = 0; slot < size; slot++) {
+            speciesStart[actors.getSpecies(slot) + 1]++;
+        }
+        for(int species = 0; species < Species.COUNT; species++) {
+            speciesStart[species + 1] += speciesStart[species];
+        }
+        // Fill each species from its end, walking the actors backwards.
+        for(int slot = size - 1; slot >= 0; slot--) {
+            bySpecies[--speciesStart[actors.getSpecies(slot) + 1]] = slot;
+        }
+        // speciesStart[s + 1] now holds the start of species s; shift back.
+        System.arraycopy(speciesStart, 1, speciesStart, 0, Species.COUNT);
+        speciesStart[Species.COUNT] = size;
+    }
+
+    /**
+     * Create an actor of a species with the settings of this simulation.
+     * It places itself in the field and adds itself to the births of
+     * the context.
+     * @param species The species id.
+     * @param randomAge Whether to give it a random age, rather than zero.
+     * @param context The context to draw random numbers from.
+     * @param location Where to place it.
+     */
+    void createActor(byte species, boolean randomAge, StepContext context, Location location)
+    {
+        Dictionary d = dict.get(species - Species.RABBIT);
+        switch(species) {
+            case Species.HUNTER:
+                new Hunter(d.getMaxAge(), d.getHuntAge(), randomAge, context, field, location);
+                break;
+            case Species.COYOTE:
+                new Coyote(d.getMaxAge(), d.getBreedAge(), d.getMaxLitter(), randomAge, context, field, location);
+                break;
+            case Species.FOX:
+                new Fox(d.getMaxAge(), d.getBreedAge(), d.getMaxLitter(), randomAge, context, field, location);
+                break;
+            case Species.RABBIT:
+                new Rabbit(d.getMaxAge(), d.getBreedAge(), d.getMaxLitter(), randomAge, context, field, location);
+                break;
+            default:
+                throw new IllegalArgumentException("Not an actor species: " + species);
+        }
+    }
+
+    /**
+     * Take up the state of a simulation saved earlier. The field must
+     * already hold the actors, which must already be in the actor
+     * store, and the random stream must have been restored. The
+     * observers are not told, as no step has been taken.
+     * @param step The step the simulation had reached.
+     * @param statistics The series of animal counts up to that step.
+     */
+    void resume(int step, SimulatorStats statistics)
+    {
+        this.step = step;
+        this.statistics = statistics;
+        statistics.setWindow(statsWindow);
+        stats.reset();
+        Arrays.fill(counts, 0);
+        field.population(counts);
+        stats.addCounts(counts);
+        stats.countFinished();
+    }
+
+    /**
+     * Turn the recording of the events of each step on or off.
+     * @param record Whether to record events.
+     */
+    public void setRecordEvents(boolean record)
+    {
+        context.getEvents().setEnabled(record);
+    }
+
+    /**
+     * @return The events of the latest step, in the order in which
+     *         they happened, if they are being recorded.
+     */
+    public EventBuffer getEvents()
+    {
+        return context.getEvents();
+    }
+
+    /**
+     * @return The timings and counts of the steps of this simulation.
+     */
+    public StepMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @return The random stream of this simulation.
+     */
+    Randomizer getRandomizer()
+    {
+        return rand;
+    }
+
+    /**
+     * @return The part of the field populated at a reset: its top
+     *         row, left column, depth and width.
+     */
+    int[] getPopulatedArea()
+    {
+        return new int[] { areaTop, areaLeft, areaDepth, areaWidth };
+    }
+
+    /**
+     * @return The settings of each kind of actor.
+     */
+    List<Dictionary> getSettings()
+    {
+        return dict;
+    }
+
+    /**
+     * @return The actors in the field.
+     */
+    protected ActorStore getActors()
+    {
+        return actors;
+    }
+
+    /**
+     * @return The field being simulated.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The population counts after the latest step.
+     */
+    public FieldStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * @return The series of animal counts during simulation.
+     */
+    public SimulatorStats getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return The animal classes which take part in the simulation.
+     */
+    public Set<Class> getAnimalClasses()
+    {
+        return animalClasses;
+    }
+}
@@ -0,0 +1,18 @@
+package simulation;
+
+/**
+ * An observer of a running simulation, notified by the
+ * SimulationEngine after every step. Observers are called on the
+ * thread running the simulation, while the field is not changing.
+ */
+public interface SimulationObserver
+{
+    /**
+     * Called after the engine has completed a step, or has
+     * been reset (with step zero).
+     * @param step The step just completed.
+     * @param field The field after the step.
+     * @param stats The population counts after the step.
+     */
+    void stepCompleted(int step, Field field, FieldStats stats);
+}
@@ -1,56 +1,63 @@
 package simulation;
 import java.awt.Color;
-import java.awt.Toolkit;
-import java.awt.event.WindowEvent;
-import java.util.ArrayList;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.Random;
 
+import javax.management.ObjectName;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
- * containing rabbits and foxes.
+ * containing rabbits and foxes. This is the graphical client of a
+ * SimulationEngine: it shows the field as the engine steps and
+ * draws a graph of the populations when the run is over.
+ * 
+ * The engine does not wait for the display. After every step it
+ * publishes a snapshot of the field, and the view draws the newest
+ * snapshot at a fixed frame rate; steps completed in between are
+ * not shown. The population counts of every step are passed on
+ * through a ring, and the graph is brought up to date with them at
+ * the same rate, so the populations can be watched during the run.
+ * 
+ * The time taken to paint each frame is added to the metrics of the
+ * engine, which are registered with JMX for as long as the simulator
+ * is open.
  * 
  * @author David J. Barnes and Michael K������lling
  * @version 2011.07.31
  */
 public class Simulator
 {
-    // Constants representing configuration information for the simulation.
-    // The default width for the grid.
-    private static final int DEFAULT_WIDTH = 120;
-    // The default depth of the grid.
-    private static final int DEFAULT_DEPTH = 80;
-    // The probability that a coyote will be created in any given grid position.
-    private static final double COYOTE_CREATION_PROBABILITY = 0.03;
-    // The probability that a fox will be created in any given grid position.
-    private static final double FOX_CREATION_PROBABILITY = 0.04;
-    // The probability that a rabbit will be created in any given grid position.
-    private static final double RABBIT_CREATION_PROBABILITY = 0.08;
-    // The probability that a hunter will be created in any given grid position.
-    private static final double HUNTER_CREATION_PROBABILITY = 0.02;
+    // The default number of frames shown per second.
+    public static final int DEFAULT_FRAME_RATE = 25;
+    // The number of steps of counts that can wait for the graph.
+    private static final int SAMPLE_CAPACITY = 16384;
 
-    // List of animals in the field.
-    private List<Actor> actors;
-    // The current state of the field.
-    private Field field;
-    // The current step of the simulation.
-    private int step;
+    // The simulation being shown.
+    private SimulationEngine engine;
     // A graphical view of the simulation.
     private SimulatorView view;
     private SimulatorGraph graph;
-    private List<Dictionary> dict;
     // The mapping of animal colors
     private Map<Class, Color> colors;
-    // The series of animal counts during simulation.
-    private SimulatorStats statistics;
+    // The snapshots handed from the engine to the view.
+    private SnapshotBuffer snapshots;
+    // Shows the newest snapshot at the frame rate.
+    private Timer frameTimer;
+    // The animal classes, in the order of the counts in a sample.
+    private Class[] animalClasses;
+    // The counts of each step, handed from the engine to the graph.
+    private SampleRing samples;
+    // Scratch space for a sample, for the engine and for the graph.
+    private int[] sampleOut, sampleIn;
+    // The counts shown in the graph while the simulation runs.
+    private SimulatorStats liveStats;
+    // The name the metrics of the engine are registered under.
+    private ObjectName metricsName;
     
     /**
      * Construct a simulation field with default size.
@@ -58,10 +65,19 @@ public class Simulator
     public Simulator(Control control)
     {
     	// Take the dictionary of animal kinds from control object
-    	dict = control.getCollection();
-    	
-    	actors = new ArrayList<Actor>();
-        field = new Field(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    	this(new SimulationEngine(control.getCollection()));
+    }
+    
+    /**
+     * Show a simulation, such as one restored from a checkpoint,
+     * from its current state.
+     * @param engine The simulation, between steps.
+     */
+    public Simulator(SimulationEngine engine)
+    {
+    	this.engine = engine;
+    	Field field = engine.getField();
+    	metricsName = engine.getMetrics().register("Simulator");
 
         // Set up the animal colors
         colors = new HashMap<Class, Color>();
@@ -71,13 +87,124 @@ public class Simulator
         colors.put(Hunter.class, Color.red);
         
         // Create a view of the state of each location in the field.
-        view = new SimulatorView(colors, DEFAULT_DEPTH, DEFAULT_WIDTH);
+        view = new SimulatorView(colors, field.getDepth(), field.getWidth());
 
         // Create a graph view.
-        graph = new SimulatorGraph(colors, DEFAULT_DEPTH, DEFAULT_WIDTH);
+        graph = new SimulatorGraph(colors, field.getDepth(), field.getWidth());
+        
+        // Show the starting state in the view.
+        view.showStatus(engine.getStep(), field);
         
-        // Setup a valid starting point.
-        reset();
+        // After every step the engine leaves a snapshot of the field, and carries on.
+        snapshots = new SnapshotBuffer(field.getDepth(), field.getWidth());
+        // It also leaves the counts for the graph.
+        animalClasses = engine.getAnimalClasses().toArray(new Class[0]);
+        samples = new SampleRing(SAMPLE_CAPACITY, animalClasses.length);
+        sampleOut = new int[animalClasses.length];
+        sampleIn = new int[animalClasses.length];
+        engine.addObserver(new SimulationObserver() {
+            public void stepCompleted(int step, Field field, FieldStats stats) {
+                snapshots.publish(step, field);
+                for(int i = 0; i < animalClasses.length; i++) {
+                    sampleOut[i] = stats.getCount(animalClasses[i]);
+                }
+                samples.offer(sampleOut);
+            }
+        });
+        
+        // The Swing event dispatcher thread shows the newest snapshot at the frame rate,
+        // and adds the new counts to the graph.
+        frameTimer = new Timer(1000 / DEFAULT_FRAME_RATE, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showLatest();
+                updateGraph();
+            }
+        });
+        frameTimer.start();
+    }
+    
+    /**
+     * Set how often the view shows the state of the simulation.
+     * This does not affect the speed of the simulation.
+     * @param framesPerSecond The number of frames to show per second.
+     */
+    public void setFrameRate(int framesPerSecond)
+    {
+        if(framesPerSecond < 1) {
+            throw new IllegalArgumentException("Frame rate must be positive: " + framesPerSecond);
+        }
+        frameTimer.setDelay(1000 / framesPerSecond);
+    }
+    
+    /**
+     * @return The number of steps that were not shown because
+     *         the view was not ready for them.
+     */
+    public long getDroppedFrames()
+    {
+        return snapshots.getDropped();
+    }
+    
+    /**
+     * Show the newest snapshot of the field, if there is a new one.
+     * Must be called on the Swing event dispatcher thread.
+     */
+    private void showLatest()
+    {
+        FieldSnapshot snapshot = snapshots.take();
+        if(snapshot != null) {
+            FrameEvent event = new FrameEvent();
+            event.begin();
+            long start = System.nanoTime();
+            view.showStatus(snapshot);
+            engine.getMetrics().addTime(StepMetrics.PAINT, System.nanoTime() - start);
+            if(event.shouldCommit()) {
+                event.step = snapshot.getStep();
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Add the counts the engine has passed on to the graph, if it
+     * is following a run. Must be called on the Swing event
+     * dispatcher thread.
+     */
+    private void updateGraph()
+    {
+        if(liveStats == null) {
+            return;
+        }
+        boolean added = false;
+        while(samples.poll(sampleIn)) {
+            liveStats.addCounts(sampleIn);
+            added = true;
+        }
+        if(added) {
+            graph.update();
+        }
+    }
+    
+    /**
+     * Start the graph with the counts collected so far, to follow
+     * the run from there. The engine must not be running.
+     */
+    private void followRun()
+    {
+        SimulatorStats statistics = engine.getStatistics();
+        liveStats = new SimulatorStats(engine.getAnimalClasses());
+        int[] counts = new int[animalClasses.length];
+        for(int step = statistics.getStart(); step < statistics.getSize(); step++) {
+            for(int i = 0; i < animalClasses.length; i++) {
+                counts[i] = statistics.getCounts(animalClasses[i]).get(step);
+            }
+            liveStats.addCounts(counts);
+        }
+        // Counts of steps before now are already included.
+        while(samples.poll(sampleIn)) {
+        }
+        graph.setVisible(true);
+        graph.draw(liveStats);
     }
     
     /**
@@ -99,12 +226,11 @@ public class Simulator
     	//written with the help of Andrey Radchenko
     	// We have to run simulation in the Swing background thread to yield to its 
     	// event dispatcher thread and let it repaint the field as simulation progresses. 
+    	followRun();
     	SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
 
 			protected Void doInBackground() throws Exception { //written with the help of Andrey Radchenko
-		        for(int step = 1; step <= numSteps && view.isViable(field); step++) {
-		            simulateOneStep();
-		        }
+		        engine.run(numSteps);
 	            return null;
 			}
 
@@ -112,9 +238,11 @@ public class Simulator
 		        try {
 		            SwingUtilities.invokeLater(new Runnable() { //written with the help of Andrey Radchenko
 		                public void run() {
+		                    frameTimer.stop();
+		                    liveStats = null;
 		                    view.close();
 		    				graph.setVisible(true);
-		    				graph.draw(statistics);
+		    				graph.draw(engine.getStatistics());
 		                }
 		            });
 		        } catch (Exception e) {
@@ -132,33 +260,7 @@ public class Simulator
      */
     public void simulateOneStep()
     {
-        step++;
-
-        // Provide space for newborn animals.
-        List<Actor> newActors = new ArrayList<Actor>();        
-        // Let all rabbits act.
-        for(Iterator<Actor> it = actors.iterator(); it.hasNext(); ) {
-        	Actor actor = it.next();
-        	actor.act(newActors);
-            if(! actor.isAlive()) {
-                it.remove();
-            }
-        }
-               
-        // Add the newly born animals to the main lists.
-        actors.addAll(newActors);
-
-        // Here we schedule repainting of the field to the Swing event dispatcher thread.
-        try {
-            SwingUtilities.invokeAndWait(new Runnable() { //written with the help of Andrey Radchenko
-                public void run() {
-                    FieldStats stats = view.showStatus(step, field);
-                    statistics.addStats(stats);
-                }
-            });
-        } catch (Exception e) {
-        }
-        
+        engine.simulateOneStep();
     }
         
     /**
@@ -166,8 +268,13 @@ public class Simulator
      */
     public void close()
     {
+        frameTimer.stop();
         view.close();
         graph.close();
+        StepMetrics.unregister(metricsName);
+        if(engine instanceof ParallelEngine) {
+            ((ParallelEngine) engine).shutdown();
+        }
     }
     
     /**
@@ -175,52 +282,14 @@ public class Simulator
      */
     public void reset()
     {
-        step = 0;
-        actors.clear();
-        statistics = new SimulatorStats(colors.keySet());
-        populate();
-        
-        // Show the starting state in the view.
-        FieldStats stats = view.showStatus(step, field);
-        statistics.addStats(stats);
+        engine.reset();
     }
     
     /**
-     * Randomly populate the field with foxes and rabbits.
+     * @return The simulation being shown.
      */
-    private void populate()
+    public SimulationEngine getEngine()
     {
-        Random rand = Randomizer.getRandom();
-        field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-            	if(rand.nextDouble() <= HUNTER_CREATION_PROBABILITY) {
-                	Dictionary h = dict.get(3);
-                    Location location = new Location(row, col);
-                    Hunter hunter = new Hunter(h.getMaxAge(), h.getHuntAge(), true, field, location);
-                    actors.add(hunter);
-                }
-            	else if(rand.nextDouble() <= COYOTE_CREATION_PROBABILITY) {
-            		Dictionary c = dict.get(2);
-                    Location location = new Location(row, col);
-                    Coyote coyote = new Coyote(c.getMaxAge(), c.getBreedAge(), c.getMaxLitter(), true, field, location);
-                    actors.add(coyote);
-                }
-            	else if(rand.nextDouble() <= FOX_CREATION_PROBABILITY) {
-            		Dictionary f = dict.get(1);
-                    Location location = new Location(row, col);
-                    Fox fox = new Fox(f.getMaxAge(), f.getBreedAge(), f.getMaxLitter(), true, field, location);
-                    actors.add(fox);
-                }
-                else if(rand.nextDouble() <= RABBIT_CREATION_PROBABILITY) {
-                	Dictionary r = dict.get(0);
-                    Location location = new Location(row, col);
-                    Rabbit rabbit = new Rabbit(r.getMaxAge(), r.getBreedAge(), r.getMaxLitter(), true, field, location);
-                    actors.add(rabbit);
-                }
-                // else leave the location empty.
-            }
-        }
+        return engine;
     }
-
 }
@@ -7,13 +7,14 @@ import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.Toolkit;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowEvent;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 import javax.swing.JDialog;
@@ -22,10 +23,27 @@ import javax.swing.JPanel;
 
 /**
  * A linear graph of the simulation.
+ * Long runs are drawn one pixel column at a time: each column shows
+ * the range of the counts of the steps it covers, found from the
+ * summaries kept by SimulatorStats, so drawing takes the same time
+ * however many steps there are. The mouse wheel zooms in and out of
+ * the steps, dragging pans, and a double click shows all steps again.
+ * 
+ * The graph can follow a run in progress: after counts are added to
+ * its statistics, update repaints only the strip of newly added steps.
+ * To make that possible, when all steps are shown the step axis is
+ * longer than needed, and is only stretched, doubling its length,
+ * once the counts reach its end.
  */
 public class SimulatorGraph extends JFrame {
 	// Color used for objects that have no defined color.
 	private static final Color UNKNOWN_COLOR = Color.gray;
+	// The fewest steps that can be shown when zooming in.
+	private static final int MIN_ZOOM_STEPS = 10;
+	// How much one notch of the mouse wheel zooms.
+	private static final double ZOOM_FACTOR = 1.25;
+	// The shortest step axis when all steps are shown.
+	private static final int MIN_AXIS_STEPS = 64;
 
 	private GraphView graphView;
 
@@ -33,8 +51,17 @@ public class SimulatorGraph extends JFrame {
 	private Map<Class, Color> colors;
 
     private SimulatorStats stats;
+    // The largest count of the steps shown, found when they change.
     private int maxValue;
+    // The steps shown: numValues steps from firstValue.
     private int numValues;
+    private int firstValue;
+    // The number of steps the step axis is long enough for.
+    private int axisSteps;
+    // Whether all the steps kept are shown, rather than a zoomed part.
+    private boolean showingAll;
+    // Scratch space for the range of counts.
+    private int[] minMax;
 	
 	/**
 	 * Create a view of the given width and height.
@@ -47,6 +74,8 @@ public class SimulatorGraph extends JFrame {
 	{
 		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		this.colors = colors;
+		showingAll = true;
+		minMax = new int[2];
 
 		setTitle("Fox and Rabbit Simulation Graph");
 
@@ -81,17 +110,99 @@ public class SimulatorGraph extends JFrame {
 
 	public void draw(SimulatorStats stats) {
 		this.stats = stats;
+		if (showingAll) {
+			showAll();
+		} else {
+			showSteps(firstValue, numValues);
+		}
+	}
+
+	/**
+	 * Show the counts added to the statistics since the last draw or
+	 * update. Only the part of the graph they appear in is repainted,
+	 * unless the axes have to change.
+	 */
+	public void update() {
+		int end = stats.getSize();
+		int oldEnd = firstValue + numValues;
+		if (!showingAll || end == oldEnd) {
+			// New steps off to the right of a zoomed graph are not shown.
+			return;
+		}
+		int oldMax = maxValue;
+		for (Class animalClass : colors.keySet()) {
+			minMax[1] = 0;
+			stats.getSummary(animalClass).range(Math.max(oldEnd, stats.getStart()), end, minMax);
+			maxValue = Math.max(maxValue, minMax[1]);
+		}
+		if (stats.getStart() != firstValue || end - firstValue > axisSteps || maxValue != oldMax) {
+			showAll();
+		} else {
+			numValues = end - firstValue;
+			graphView.repaintSteps(oldEnd - 1, end);
+		}
+	}
+
+	/**
+	 * Show all the steps kept in the statistics.
+	 */
+	public void showAll() {
+		showingAll = true;
+		showSteps(stats.getStart(), stats.getSize() - stats.getStart());
+	}
+
+	/**
+	 * Zoom in or out of the steps shown, keeping one step in place.
+	 * @param centre The step which stays in place.
+	 * @param factor How many times more steps to show.
+	 */
+	public void zoom(int centre, double factor) {
+		int steps = (int) Math.max(MIN_ZOOM_STEPS, Math.round(axisSteps * factor));
+		int first = (int) (centre - (long) (centre - firstValue) * steps / axisSteps);
+		showingAll = false;
+		showSteps(first, steps);
+	}
+
+	/**
+	 * Move the steps shown along, without zooming.
+	 * @param steps How many steps to move by; negative moves back.
+	 */
+	public void pan(int steps) {
+		showingAll = false;
+		showSteps(firstValue + steps, numValues);
+	}
+
+	/**
+	 * Show a range of steps, limited to the steps kept.
+	 * @param first The first step to show.
+	 * @param steps The number of steps to show.
+	 */
+	private void showSteps(int first, int steps) {
+		int start = stats.getStart();
+		int end = stats.getSize();
+		steps = Math.min(steps, end - start);
+		firstValue = Math.max(start, Math.min(first, end - steps));
+		numValues = steps;
+		axisSteps = steps;
+		if (showingAll) {
+			axisSteps = MIN_AXIS_STEPS;
+			while (axisSteps < steps) {
+				axisSteps *= 2;
+			}
+		}
 		maxValue = getMaxValue();
-		numValues = stats.getSize();
 		graphView.repaint();
 	}
 
+	/**
+	 * @return The largest count of the steps shown.
+	 */
 	private int getMaxValue() {
 		int maxValue = 0;
 		for (Class animalClass : colors.keySet()) {
-			for (int count : stats.getCounts(animalClass)) {
-				maxValue = Math.max(maxValue, count);
-			}
+			minMax[1] = 0;
+			stats.getSummary(animalClass).range(firstValue, firstValue + numValues, minMax);
+			maxValue = Math.max(maxValue, minMax[1]);
 		}
 		return maxValue;
 	}
@@ -112,34 +223,117 @@ public class SimulatorGraph extends JFrame {
 		public GraphView(int height, int width) {
 			graphWidth = width * GRID_VIEW_SCALING_FACTOR;
 			graphHeight = height * GRID_VIEW_SCALING_FACTOR;
+			MouseAdapter mouse = new MouseAdapter() {
+				// Where a drag was last seen.
+				private int dragX;
+
+				public void mouseWheelMoved(MouseWheelEvent e) {
+					if (stats != null) {
+						zoom(stepAt(e.getX()), Math.pow(ZOOM_FACTOR, e.getPreciseWheelRotation()));
+					}
+				}
+
+				public void mousePressed(MouseEvent e) {
+					dragX = e.getX();
+				}
+
+				public void mouseDragged(MouseEvent e) {
+					int steps = (int) ((long) (dragX - e.getX()) * axisSteps / getPlotWidth());
+					if (stats != null && steps != 0) {
+						pan(steps);
+						dragX = e.getX();
+					}
+				}
+
+				public void mouseClicked(MouseEvent e) {
+					if (stats != null && e.getClickCount() == 2) {
+						showAll();
+					}
+				}
+			};
+			addMouseListener(mouse);
+			addMouseMotionListener(mouse);
+			addMouseWheelListener(mouse);
 		}
 		
-		public Dimension getPreferredSize() {
-			return new Dimension(graphWidth, graphHeight);
+		/**
+		 * @return The width of the plotted area, in pixels.
+		 */
+		private int getPlotWidth() {
+			return Math.max(1, getWidth() - 2 * padding - labelPadding);
 		}
 		
-		private List<Point> getGraphPoints(Class animalClass, double xScale, double yScale) {
-			List<Point> graphPoints = new ArrayList<Point>();
-			int i = 0;
-			for (int count : stats.getCounts(animalClass)) {
-				int x = (int) (i * xScale + padding + labelPadding);
-				int y = (int) ((maxValue - count) * yScale + padding);
-				graphPoints.add(new Point(x, y));
-				i++;
-			}
-			return graphPoints;
+		/**
+		 * @return The step shown at a horizontal position.
+		 */
+		private int stepAt(int x) {
+			int column = Math.max(0, Math.min(getPlotWidth(), x - padding - labelPadding));
+			return firstValue + (int) ((long) column * axisSteps / getPlotWidth());
+		}
+		
+		/**
+		 * Repaint the part of the graph showing a range of steps.
+		 * @param from The first step.
+		 * @param to The step after the last.
+		 */
+		public void repaintSteps(int from, int to) {
+			int x0 = padding + labelPadding + (int) ((long) (from - firstValue) * getPlotWidth() / (axisSteps - 1));
+			int x1 = padding + labelPadding + (int) ((long) (to - firstValue) * getPlotWidth() / (axisSteps - 1));
+			// Allow for the width of the lines and for rounding.
+			repaint(x0 - 3, 0, x1 - x0 + 7, getHeight() - padding - labelPadding);
 		}
 		
-		private void drawLine(Graphics2D g2, List<Point> graphPoints, Color lineColor) {
+		public Dimension getPreferredSize() {
+			return new Dimension(graphWidth, graphHeight);
+		}
+		
+		private void drawLine(Graphics2D g2, SeriesSummary summary, double xScale, double yScale, Color lineColor) {
 			Stroke oldStroke = g2.getStroke();
 			g2.setColor(lineColor);
 			g2.setStroke(GRAPH_STROKE);
-			for (int i = 0; i < graphPoints.size() - 1; i++) {
-				int x1 = graphPoints.get(i).x;
-				int y1 = graphPoints.get(i).y;
-				int x2 = graphPoints.get(i + 1).x;
-				int y2 = graphPoints.get(i + 1).y;
-				g2.drawLine(x1, y1, x2, y2);
+			IntSeries counts = summary.getSeries();
+			int plotWidth = getPlotWidth();
+			int end = firstValue + numValues;
+			// Only the columns inside the area being painted are drawn.
+			Rectangle clip = g2.getClipBounds();
+			int firstColumn = 0;
+			int lastColumn = plotWidth;
+			if (clip != null) {
+				firstColumn = Math.max(0, clip.x - padding - labelPadding - 1);
+				lastColumn = Math.min(plotWidth, clip.x + clip.width - padding - labelPadding + 1);
+			}
+			if (axisSteps <= 2 * plotWidth) {
+				// Few enough steps to draw a segment between each pair.
+				int from = Math.max(firstValue, firstValue + (int) ((long) firstColumn * axisSteps / plotWidth) - 1);
+				int to = Math.min(end, firstValue + (int) ((long) lastColumn * axisSteps / plotWidth) + 2);
+				int x1 = (int) ((from - firstValue) * xScale + padding + labelPadding);
+				int y1 = from < end ? (int) ((maxValue - counts.get(from)) * yScale + padding) : 0;
+				for (int i = from + 1; i < to; i++) {
+					int x2 = (int) ((i - firstValue) * xScale + padding + labelPadding);
+					int y2 = (int) ((maxValue - counts.get(i)) * yScale + padding);
+					g2.drawLine(x1, y1, x2, y2);
+					x1 = x2;
+					y1 = y2;
+				}
+			} else {
+				// Draw each pixel column from the lowest to the highest count
+				// of its steps, including the last count of the column before
+				// so that the line is unbroken.
+				for (int column = firstColumn; column < lastColumn; column++) {
+					int from = firstValue + (int) ((long) column * axisSteps / plotWidth);
+					int to = Math.min(end, firstValue + (int) ((long) (column + 1) * axisSteps / plotWidth));
+					if (from >= to) {
+						break;
+					}
+					summary.range(from, to, minMax);
+					if (from > firstValue) {
+						minMax[0] = Math.min(minMax[0], counts.get(from - 1));
+						minMax[1] = Math.max(minMax[1], counts.get(from - 1));
+					}
+					int x = column + padding + labelPadding;
+					g2.drawLine(x, (int) ((maxValue - minMax[1]) * yScale + padding),
+					            x, (int) ((maxValue - minMax[0]) * yScale + padding));
+				}
 			}
 			g2.setStroke(oldStroke);
 		}
@@ -149,7 +343,7 @@ public class SimulatorGraph extends JFrame {
 			Graphics2D g2 = (Graphics2D) g;
 			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-			double xScale = ((double) getWidth() - 2 * padding - labelPadding) / (numValues - 1);
+			double xScale = ((double) getWidth() - 2 * padding - labelPadding) / (axisSteps - 1);
 			double yScale = ((double) getHeight() - 2 * padding - labelPadding) / (maxValue - 1);
 
 			// draw tick marks and grid lines for y axis
@@ -178,7 +372,7 @@ public class SimulatorGraph extends JFrame {
 			
 			// draw tick marks and grid lines for x axis
 	        for (int i = 0; i < NUM_X_TICKS; i++) {
-	            if (numValues > 1) {
+	            if (axisSteps > 1) {
 	                int x0 = i * (getWidth() - padding * 2 - labelPadding) / (NUM_X_TICKS - 1) + padding + labelPadding;
 	                int x1 = x0;
 	                int y0 = getHeight() - padding - labelPadding;
@@ -187,7 +381,7 @@ public class SimulatorGraph extends JFrame {
 	                    g2.setColor(gridColor);
 	                    g2.drawLine(x0, getHeight() - padding - labelPadding - 1 - tickWidth, x1, padding);
 	                    g2.setColor(Color.black);
-	                    String xLabel = Integer.toString((int)(i * numValues * 1.0 / NUM_X_TICKS));
+	                    String xLabel = Integer.toString(firstValue + (int)(i * axisSteps * 1.0 / NUM_X_TICKS));
 	                    FontMetrics metrics = g2.getFontMetrics();
 	                    int labelWidth = metrics.stringWidth(xLabel);
 	                    g2.drawString(xLabel, x0 - labelWidth / 2, y0 + metrics.getHeight() + 3);
@@ -226,8 +420,7 @@ public class SimulatorGraph extends JFrame {
 
 	        
 			for (Class animalClass : colors.keySet()) {
-				List<Point> graphPoints = getGraphPoints(animalClass, xScale, yScale);
-				drawLine(g2, graphPoints, getColor(animalClass));
+				drawLine(g2, stats.getSummary(animalClass), xScale, yScale, getColor(animalClass));
 			}
 		}
 
@@ -1,29 +1,49 @@
 package simulation;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * This class collects and provides the sequences of statistical 
  * data on the state of a field during simulation.
+ * It may be limited to a window of the latest steps, so that long
+ * runs do not keep their whole history in memory; a StatsSink can
+ * record the whole history on disk instead.
  */
 public class SimulatorStats {
 	private int size;
 	// Animal classes which participate in simulation.
 	private final Set<Class> animalClasses;
 	// This map contains the sequences of animal counts during simulation.
-	private final Map<Class, List<Integer>> counts;
+	private final Map<Class, IntSeries> counts;
+	// The same classes and sequences, in order, for adding to quickly.
+	private final Class[] classes;
+	private final IntSeries[] series;
+	// A summary of each sequence, for finding its range quickly.
+	private final Map<Class, SeriesSummary> summaries;
+	private final SeriesSummary[] summary;
+	// The number of latest steps which must be kept.
+	private int window;
 	
 	public SimulatorStats(Set<Class> animalClasses)
 	{
 		size = 0;
+		window = Integer.MAX_VALUE;
 		this.animalClasses = animalClasses;
-    	counts = new HashMap<Class, List<Integer>>();
+    	counts = new HashMap<Class, IntSeries>();
+    	classes = new Class[animalClasses.size()];
+    	series = new IntSeries[animalClasses.size()];
+    	summaries = new HashMap<Class, SeriesSummary>();
+    	summary = new SeriesSummary[animalClasses.size()];
+    	int i = 0;
     	for (Class animalClass : animalClasses)
     	{
-    		counts.put(animalClass, new LinkedList<Integer>());
+    		classes[i] = animalClass;
+    		series[i] = new IntSeries();
+    		counts.put(animalClass, series[i]);
+    		summary[i] = new SeriesSummary(series[i]);
+    		summaries.put(animalClass, summary[i]);
+    		i++;
     	}
 	}
 	
@@ -34,13 +54,99 @@ public class SimulatorStats {
 	void addStats(FieldStats stats) 
 	{
 		size++;
-		for (Class animalClass : animalClasses) 
+		for (int i = 0; i < classes.length; i++) 
 		{
-			List<Integer> animalCounts = counts.get(animalClass);
-			animalCounts.add(stats.getCount(animalClass));
+			add(i, stats.getCount(classes[i]));
 		}
 	}
 	
+	/**
+	 * Add the counts of one step.
+	 * @param counts The count of each animal class, in the order
+	 *               of the set of animal classes.
+	 */
+	void addCounts(int[] counts) 
+	{
+		size++;
+		for (int i = 0; i < classes.length; i++) 
+		{
+			add(i, counts[i]);
+		}
+	}
+	
+	/**
+	 * Continue the sequences at a later step, as if the counts of the
+	 * steps in between had been added and discarded.
+	 * @param size The step of the next counts to be added.
+	 */
+	void skipTo(int size) 
+	{
+		this.size = size;
+		for (int i = 0; i < classes.length; i++) 
+		{
+			series[i].skipTo(size);
+			summary[i].update();
+		}
+	}
+	
+	/**
+	 * @return A copy of these sequences, which may be added to
+	 *         independently.
+	 */
+	SimulatorStats copy() 
+	{
+		SimulatorStats copy = new SimulatorStats(animalClasses);
+		copy.window = window;
+		int start = getStart();
+		copy.skipTo(start);
+		int[] counts = new int[classes.length];
+		for (int step = start; step < size; step++) 
+		{
+			for (int i = 0; i < classes.length; i++) 
+			{
+				counts[i] = series[i].get(step);
+			}
+			copy.addCounts(counts);
+		}
+		return copy;
+	}
+	
+	/**
+	 * Add a count to one sequence, keeping its summary up to date.
+	 * @param i The index of the sequence.
+	 * @param count The count.
+	 */
+	private void add(int i, int count) 
+	{
+		series[i].add(count);
+		if (size > window) 
+		{
+			series[i].discardBefore(size - window);
+		}
+		summary[i].update();
+	}
+	
+	/**
+	 * Limit the sequences to the latest steps. Older counts are
+	 * discarded as new ones are added.
+	 * @param window The number of latest steps to keep at least.
+	 */
+	public void setWindow(int window) 
+	{
+		if (window < 1) 
+		{
+			throw new IllegalArgumentException("Window must be positive: " + window);
+		}
+		this.window = window;
+	}
+	
+	/**
+	 * @return The index of the oldest step still kept.
+	 */
+	public int getStart() {
+		return series.length > 0 ? series[0].getStart() : 0;
+	}
+	
 	/**
 	 * @return The length of sequences collected during simulation.
 	 */
@@ -53,9 +159,19 @@ public class SimulatorStats {
 	 * @param animalClass The class of the animal.
 	 * @return the sequence of animal counts during simulation.
 	 */
-	public List<Integer> getCounts(Class animalClass) 
+	public IntSeries getCounts(Class animalClass) 
 	{
 		return counts.get(animalClass);
 	}
+	
+	/**
+	 * Get the summary of the sequence of counts for the animal.
+	 * @param animalClass The class of the animal.
+	 * @return the summary, which is kept up to date as counts are added.
+	 */
+	public SeriesSummary getSummary(Class animalClass) 
+	{
+		return summaries.get(animalClass);
+	}
 
 }
@@ -6,12 +6,13 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.Toolkit;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +47,10 @@ public class SimulatorView extends JFrame
     
     // A map for storing colors for participants in the simulation
     private Map<Class, Color> colors;
+    // The same colors as RGB values, indexed by species id
+    private int[] speciesColors;
+    // A snapshot for showing a field directly
+    private FieldSnapshot snapshot;
     // A statistics object computing and storing simulation information
     private FieldStats stats;
 
@@ -60,6 +65,11 @@ public class SimulatorView extends JFrame
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         stats = new FieldStats();
         this.colors = colors;
+        speciesColors = new int[Species.COUNT];
+        speciesColors[Species.EMPTY] = EMPTY_COLOR.getRGB();
+        for(int species = Species.EMPTY + 1; species < Species.COUNT; species++) {
+            speciesColors[species] = getColor(Species.classOf(species)).getRGB();
+        }
 
         setTitle("Fox and Rabbit Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -84,6 +94,20 @@ public class SimulatorView extends JFrame
         dispose();
     }
     
+    /**
+     * Colour the pixels of an image from a species grid, one pixel
+     * per location.
+     * @param species The species id of each location, row by row.
+     * @param colors The RGB color of each species id.
+     * @param pixels The pixels of the image, row by row.
+     */
+    static void render(byte[] species, int[] colors, int[] pixels)
+    {
+        for(int i = 0; i < pixels.length; i++) {
+            pixels[i] = colors[species[i]];
+        }
+    }
+
     /**
      * @return The color to be used for a given class of animal.
      */
@@ -106,31 +130,34 @@ public class SimulatorView extends JFrame
      * @return The simulation statistics up to this point.
      */
     public FieldStats showStatus(int step, Field field)
+    {
+        if(snapshot == null) {
+            snapshot = new FieldSnapshot(field.getDepth(), field.getWidth());
+        }
+        snapshot.capture(step, field);
+        return showStatus(snapshot);
+    }
+
+    /**
+     * Show the state of the field captured in a snapshot.
+     * @param snapshot The snapshot to be displayed.
+     * @return The statistics of the snapshot.
+     */
+    public FieldStats showStatus(FieldSnapshot snapshot)
     {
         if(!isVisible()) {
             setVisible(true);
         }
             
-        stepLabel.setText(STEP_PREFIX + step);
+        stepLabel.setText(STEP_PREFIX + snapshot.getStep());
         stats.reset();
         
-        fieldView.preparePaint();
-
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
-                }
-            }
-        }
+        fieldView.render(snapshot.getSpecies(), speciesColors);
+        stats.addCounts(snapshot.getCounts());
         stats.countFinished();
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
+        // The counts are complete, so no field is needed for the details.
+        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(null));
         fieldView.repaint();
         return stats;
     }
@@ -157,10 +184,10 @@ public class SimulatorView extends JFrame
         private final int GRID_VIEW_SCALING_FACTOR = 6;
 
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
-        Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        // One pixel per location, scaled up when painted.
+        private BufferedImage fieldImage;
+        // The pixels of the image, row by row.
+        private int[] pixels;
 
         /**
          * Create a new FieldView component.
@@ -169,7 +196,8 @@ public class SimulatorView extends JFrame
         {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
         }
 
         /**
@@ -182,52 +210,23 @@ public class SimulatorView extends JFrame
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
-         */
-        public void preparePaint()
-        {
-            if(! size.equals(getSize())) {  // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
-                }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
-                }
-            }
-        }
-        
-        /**
-         * Paint on grid location on this field in a given color.
+         * Colour every location of the image from the species grid.
+         * @param species The species id of each location, row by row.
+         * @param colors The RGB color of each species id.
          */
-        public void drawMark(int x, int y, Color color)
+        public void render(byte[] species, int[] colors)
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            SimulatorView.render(species, colors, pixels);
         }
 
         /**
          * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * internal image to screen, scaled to fill the component.
          */
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                Dimension currentSize = getSize();
-                if(size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
-                }
-                else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
-                }
-            }
+            Dimension currentSize = getSize();
+            g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
         }
     }
 
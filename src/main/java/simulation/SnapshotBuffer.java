@@ -0,0 +1,77 @@
+package simulation;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A triple buffer through which the simulation hands field snapshots
+ * to the display. The simulation fills its own snapshot after every
+ * step and swaps it into the middle slot without waiting; the display
+ * swaps the middle snapshot out when it is ready to draw. A snapshot
+ * which is swapped back out by the simulation before the display has
+ * taken it is dropped and filled again, so exactly three snapshots
+ * are used however the speeds of the two sides differ.
+ */
+public class SnapshotBuffer
+{
+    // The snapshot being filled by the simulation.
+    private FieldSnapshot back;
+    // The newest snapshot handed over, or one the display is done with.
+    private final AtomicReference<FieldSnapshot> middle;
+    // The snapshot being drawn by the display.
+    private FieldSnapshot front;
+    // The number of snapshots replaced before they were taken.
+    private volatile long dropped;
+
+    /**
+     * Create an empty buffer for snapshots of a field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public SnapshotBuffer(int depth, int width)
+    {
+        back = new FieldSnapshot(depth, width);
+        middle = new AtomicReference<FieldSnapshot>(new FieldSnapshot(depth, width));
+        front = new FieldSnapshot(depth, width);
+    }
+
+    /**
+     * Take a snapshot of a field and make it the newest one.
+     * This is called by the simulation and never blocks.
+     * @param step The step the field has reached.
+     * @param field The field.
+     */
+    public void publish(int step, Field field)
+    {
+        back.capture(step, field);
+        back.fresh = true;
+        back = middle.getAndSet(back);
+        if(back.fresh) {
+            // The display never saw it.
+            dropped++;
+        }
+    }
+
+    /**
+     * Take the newest snapshot, if there is one that has not been
+     * taken yet. This is called by the display. The snapshot stays
+     * unchanged until the next call.
+     * @return The newest snapshot, or null if there is no new one.
+     */
+    public FieldSnapshot take()
+    {
+        front = middle.getAndSet(front);
+        if(!front.fresh) {
+            return null;
+        }
+        front.fresh = false;
+        return front;
+    }
+
+    /**
+     * @return The number of snapshots which were replaced by a newer
+     *         one before the display took them.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+}
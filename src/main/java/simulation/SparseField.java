@@ -0,0 +1,434 @@
+package simulation;
+import java.util.Arrays;
+
+/**
+ * A field for very large worlds of which only a small part is ever
+ * occupied. The grid is kept in square chunks, as in ChunkedField,
+ * but only the chunks holding an occupant exist: a chunk is created
+ * when the first occupant is placed or moved into it, and dropped
+ * when its last occupant leaves. A missing chunk reads as empty. The
+ * chunks are found through a hash table keyed by their position, so
+ * the memory used and the cost of clearing, forking or counting the
+ * field follow the number of occupied chunks, not the area.
+ *
+ * The field keeps no occupancy bitboards, which would take a few
+ * bytes for every location of the whole area; its neighbourhood
+ * queries read the neighbours one by one, across chunk borders where
+ * needed. Views and run logs, which copy the whole species grid, are
+ * only practical for fields of ordinary size. A SparseField must only
+ * be changed by one thread at a time.
+ */
+public class SparseField extends Field
+{
+    // The side of a chunk is 2^CHUNK_BITS positions.
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The number of slots of the chunk table when it is empty.
+    private static final int INITIAL_SLOTS = 64;
+
+    // The chunks, in an open addressing table keyed by position;
+    // the number of slots is a power of two, and a null slot is free.
+    private Chunk[] table;
+    // The number of chunks in the table.
+    private int chunkCount;
+    // The chunk found last, which the next lookup most likely wants.
+    private Chunk last;
+    // The occupants, addressed by id.
+    private final Occupants occupants;
+
+    /**
+     * Represent a field of the given dimensions, with nothing in it.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public SparseField(int depth, int width)
+    {
+        this(depth, width, new Occupants());
+    }
+
+    /**
+     * Represent a field of the given dimensions, with its table of
+     * occupants and no chunks yet.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param occupants The table of occupants.
+     */
+    private SparseField(int depth, int width, Occupants occupants)
+    {
+        super(depth, width, false);
+        table = new Chunk[INITIAL_SLOTS];
+        this.occupants = occupants;
+    }
+
+    /**
+     * Empty the field, dropping every chunk.
+     */
+    public void clear()
+    {
+        table = new Chunk[INITIAL_SLOTS];
+        chunkCount = 0;
+        last = null;
+        occupants.clear();
+        emptied();
+    }
+
+    /**
+     * Clear the given location.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void clear(int row, int col)
+    {
+        Chunk chunk = find(row, col);
+        if(chunk == null) {
+            return;
+        }
+        int cell = cell(row, col);
+        if(chunk.ids[cell] != 0) {
+            occupants.remove(chunk.ids[cell] - 1);
+            removed(chunk.species[cell], row, col);
+            chunk.ids[cell] = 0;
+            chunk.species[cell] = Species.EMPTY;
+            if(--chunk.count == 0) {
+                release(chunk);
+            }
+        }
+    }
+
+    /**
+     * Place an animal at the given location.
+     * If there is already an animal at the location it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     */
+    public void place(Object animal, int row, int col)
+    {
+        clear(row, col);
+        if(animal != null) {
+            Chunk chunk = findOrCreate(row, col);
+            int cell = cell(row, col);
+            chunk.ids[cell] = occupants.add(animal) + 1;
+            chunk.species[cell] = Species.of(animal);
+            chunk.count++;
+            added(chunk.species[cell], row, col, animal);
+        }
+    }
+
+    /**
+     * Move whatever is at one location to another. Anything
+     * already at the destination will be lost. The occupant
+     * keeps its id.
+     * @param fromRow Row coordinate of the current location.
+     * @param fromCol Column coordinate of the current location.
+     * @param toRow Row coordinate of the new location.
+     * @param toCol Column coordinate of the new location.
+     */
+    public void move(int fromRow, int fromCol, int toRow, int toCol)
+    {
+        if(fromRow != toRow || fromCol != toCol) {
+            clear(toRow, toCol);
+            Chunk from = find(fromRow, fromCol);
+            int fromCell = cell(fromRow, fromCol);
+            if(from == null || from.ids[fromCell] == 0) {
+                // Nothing to move; the destination is now empty, as it
+                // would be after moving an empty location.
+                return;
+            }
+            Chunk to = findOrCreate(toRow, toCol);
+            int toCell = cell(toRow, toCol);
+            to.ids[toCell] = from.ids[fromCell];
+            to.species[toCell] = from.species[fromCell];
+            to.count++;
+            from.ids[fromCell] = 0;
+            from.species[fromCell] = Species.EMPTY;
+            moved(to.species[toCell], fromRow, fromCol, toRow, toCol);
+            if(--from.count == 0) {
+                release(from);
+            }
+        }
+    }
+
+    /**
+     * Return the animal at the given location, if any.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The animal at the given location, or null if there is none.
+     */
+    public Object getObjectAt(int row, int col)
+    {
+        Chunk chunk = find(row, col);
+        if(chunk == null) {
+            return null;
+        }
+        int id = chunk.ids[cell(row, col)];
+        return id == 0 ? null : occupants.get(id - 1);
+    }
+
+    /**
+     * Return the species id of the animal at the given location.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species of the animal, or Species.EMPTY if there is none.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        Chunk chunk = find(row, col);
+        return chunk == null ? Species.EMPTY : chunk.species[cell(row, col)];
+    }
+
+    /**
+     * Replace the occupant of a location by another of the same
+     * species. The occupant id is kept.
+     * @param row Row coordinate of the location.
+     * @param col Column coordinate of the location.
+     * @param occupant The new occupant.
+     */
+    public void replace(int row, int col, Object occupant)
+    {
+        occupants.set(find(row, col).ids[cell(row, col)] - 1, occupant);
+    }
+
+    /**
+     * Create a copy of this field, copying its occupied chunks.
+     * @return The copy, holding the same occupants under the same ids.
+     */
+    public Field fork()
+    {
+        SparseField copy = new SparseField(getDepth(), getWidth(), occupants.copy());
+        copy.table = new Chunk[table.length];
+        for(Chunk chunk : table) {
+            if(chunk != null) {
+                copy.insert(new Chunk(chunk));
+            }
+        }
+        copy.chunkCount = chunkCount;
+        copy.copyPopulation(this);
+        return copy;
+    }
+
+    /**
+     * Copy the species grid of the field, row by row. Only the
+     * occupied chunks are visited.
+     * @param species Receives the species id of each position, at
+     *                index row * width + col.
+     */
+    public void copySpecies(byte[] species)
+    {
+        Arrays.fill(species, Species.EMPTY);
+        int width = getWidth();
+        for(Chunk chunk : table) {
+            if(chunk != null) {
+                int top = chunk.chunkRow << CHUNK_BITS;
+                int left = chunk.chunkCol << CHUNK_BITS;
+                int rows = Math.min(CHUNK_SIZE, getDepth() - top);
+                int cols = Math.min(CHUNK_SIZE, width - left);
+                for(int r = 0; r < rows; r++) {
+                    System.arraycopy(chunk.species, r << CHUNK_BITS,
+                                     species, (top + r) * width + left, cols);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the occupants of the field by species by scanning the
+     * occupied chunks. The locations outside them are counted as
+     * empty without being visited.
+     * @param counts Receives the number of occupants of each species,
+     *               indexed by species id. It is added to, not reset.
+     */
+    public void census(int[] counts)
+    {
+        long occupied = 0;
+        for(Chunk chunk : table) {
+            if(chunk != null) {
+                for(byte species : chunk.species) {
+                    if(species != Species.EMPTY) {
+                        counts[species]++;
+                        occupied++;
+                    }
+                }
+            }
+        }
+        counts[Species.EMPTY] += countEmpty(occupied);
+    }
+
+    /**
+     * @return The number of chunks the field holds, each of which
+     *         has at least one occupant.
+     */
+    public int getChunkCount()
+    {
+        return chunkCount;
+    }
+
+    /**
+     * Return the chunk holding a position.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The chunk, or null if the position is in no chunk.
+     */
+    private Chunk find(int row, int col)
+    {
+        int chunkRow = row >> CHUNK_BITS;
+        int chunkCol = col >> CHUNK_BITS;
+        Chunk chunk = last;
+        if(chunk != null && chunk.chunkRow == chunkRow && chunk.chunkCol == chunkCol) {
+            return chunk;
+        }
+        int mask = table.length - 1;
+        for(int slot = slot(chunkRow, chunkCol, mask); ; slot = (slot + 1) & mask) {
+            chunk = table[slot];
+            if(chunk == null) {
+                return null;
+            }
+            if(chunk.chunkRow == chunkRow && chunk.chunkCol == chunkCol) {
+                last = chunk;
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Return the chunk holding a position, creating it if there is
+     * none.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The chunk.
+     */
+    private Chunk findOrCreate(int row, int col)
+    {
+        Chunk chunk = find(row, col);
+        if(chunk == null) {
+            // Keep the table at most half full.
+            if(2 * (chunkCount + 1) > table.length) {
+                Chunk[] old = table;
+                table = new Chunk[2 * old.length];
+                for(Chunk moved : old) {
+                    if(moved != null) {
+                        insert(moved);
+                    }
+                }
+            }
+            chunk = new Chunk(row >> CHUNK_BITS, col >> CHUNK_BITS);
+            insert(chunk);
+            chunkCount++;
+            last = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Add a chunk to the table, which must have a free slot.
+     * @param chunk The chunk.
+     */
+    private void insert(Chunk chunk)
+    {
+        int mask = table.length - 1;
+        int slot = slot(chunk.chunkRow, chunk.chunkCol, mask);
+        while(table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = chunk;
+    }
+
+    /**
+     * Drop a chunk which has become empty from the table. The chunks
+     * after it in its run of slots are moved back, so that every
+     * chunk can still be found from its home slot.
+     * @param chunk The chunk.
+     */
+    private void release(Chunk chunk)
+    {
+        int mask = table.length - 1;
+        int slot = slot(chunk.chunkRow, chunk.chunkCol, mask);
+        while(table[slot] != chunk) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = null;
+        for(int next = (slot + 1) & mask; table[next] != null; next = (next + 1) & mask) {
+            Chunk moved = table[next];
+            int home = slot(moved.chunkRow, moved.chunkCol, mask);
+            // Move it into the free slot if that lies between its home
+            // slot and where it is now, cyclically.
+            if(((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = moved;
+                table[next] = null;
+                slot = next;
+            }
+        }
+        chunkCount--;
+        if(last == chunk) {
+            last = null;
+        }
+    }
+
+    /**
+     * Return the home slot of the chunk at a chunk position.
+     * @param chunkRow The row of the chunk.
+     * @param chunkCol The column of the chunk.
+     * @param mask The number of slots of the table, less one.
+     * @return The slot.
+     */
+    private static int slot(int chunkRow, int chunkCol, int mask)
+    {
+        long key = (long) chunkRow << 32 | chunkCol;
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Return the position of a cell within its chunk.
+     * @param row The row of the position.
+     * @param col The column of the position.
+     * @return The index of the cell in the arrays of its chunk.
+     */
+    private static int cell(int row, int col)
+    {
+        return (row & CHUNK_MASK) << CHUNK_BITS | col & CHUNK_MASK;
+    }
+
+    /**
+     * The cells of a square of the field, row by row, with at least
+     * one occupant.
+     */
+    private static class Chunk
+    {
+        // The position of the chunk, in chunks from the top left.
+        final int chunkRow, chunkCol;
+        // The occupant id + 1 of each cell; zero marks an empty one.
+        final int[] ids;
+        // The species id of each cell.
+        final byte[] species;
+        // The number of occupied cells.
+        int count;
+
+        /**
+         * Create an empty chunk.
+         * @param chunkRow The row of the chunk.
+         * @param chunkCol The column of the chunk.
+         */
+        Chunk(int chunkRow, int chunkCol)
+        {
+            this.chunkRow = chunkRow;
+            this.chunkCol = chunkCol;
+            ids = new int[CHUNK_SIZE * CHUNK_SIZE];
+            species = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        }
+
+        /**
+         * Create a copy of a chunk.
+         * @param chunk The chunk to copy.
+         */
+        Chunk(Chunk chunk)
+        {
+            chunkRow = chunk.chunkRow;
+            chunkCol = chunk.chunkCol;
+            ids = chunk.ids.clone();
+            species = chunk.species.clone();
+            count = chunk.count;
+        }
+    }
+}
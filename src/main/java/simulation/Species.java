@@ -0,0 +1,99 @@
+package simulation;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The species ids used by fields which keep a species grid
+ * alongside their occupants. Ids are small so that they fit in
+ * a byte and can be used directly as array indices.
+ */
+public class Species
+{
+    // Marks an empty location.
+    public static final byte EMPTY = 0;
+    public static final byte RABBIT = 1;
+    public static final byte FOX = 2;
+    public static final byte COYOTE = 3;
+    public static final byte HUNTER = 4;
+    // Any occupant which is not one of the actors above.
+    public static final byte UNKNOWN = 5;
+    // The number of species ids, including EMPTY and UNKNOWN.
+    public static final int COUNT = 6;
+
+    // The class of each species, indexed by species id.
+    private static final Class[] classes = {
+        null, Rabbit.class, Fox.class, Coyote.class, Hunter.class, Object.class
+    };
+
+    /**
+     * Return the species id of an occupant of the field.
+     * @param occupant The occupant, may be null.
+     * @return The species of the occupant, or EMPTY for null.
+     */
+    public static byte of(Object occupant)
+    {
+        if(occupant == null) {
+            return EMPTY;
+        }
+        else if(occupant instanceof Actor) {
+            return ((Actor) occupant).getSpecies();
+        }
+        else {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Return the class of the actors of a species.
+     * @param species The species id.
+     * @return The class, or null for EMPTY.
+     */
+    public static Class classOf(int species)
+    {
+        return classes[species];
+    }
+
+    /**
+     * Return the species of actors of a class.
+     * @param c The class.
+     * @return The species id, or UNKNOWN if the class is not that of
+     *         an actor species.
+     */
+    public static byte ofClass(Class c)
+    {
+        for(byte species = RABBIT; species <= HUNTER; species++) {
+            if(classes[species] == c) {
+                return species;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Return the species of actors by the name of their class.
+     * @param name The name, such as "Fox", in any case.
+     * @return The species id.
+     */
+    public static byte named(String name)
+    {
+        for(byte species = RABBIT; species <= HUNTER; species++) {
+            if(classes[species].getSimpleName().equalsIgnoreCase(name)) {
+                return species;
+            }
+        }
+        throw new IllegalArgumentException("No such species: " + name);
+    }
+
+    /**
+     * @return A new set of the classes of the animals which take part
+     *         in a simulation, in species id order.
+     */
+    public static Set<Class> animalClasses()
+    {
+        Set<Class> animalClasses = new LinkedHashSet<Class>();
+        for(int species = RABBIT; species <= HUNTER; species++) {
+            animalClasses.add(classOf(species));
+        }
+        return animalClasses;
+    }
+}
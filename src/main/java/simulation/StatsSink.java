@@ -0,0 +1,261 @@
+package simulation;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An observer which streams the population counts of every step to
+ * a file while a simulation runs. Subclasses decide how the counts
+ * are encoded. The counts are encoded into buffers, and full buffers
+ * are written to the file by a background thread, so the simulation
+ * only waits for the disk when it gets several buffers ahead of it.
+ * Buffers are also handed over at least once a second, so the file
+ * can be followed while the run is in progress.
+ * 
+ * Register the sink with SimulationEngine.addObserver, and close it
+ * when the run is over to write the remaining counts.
+ */
+public abstract class StatsSink implements SimulationObserver, Closeable
+{
+    // The size of each buffer, in bytes.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The number of buffers, and so how far the simulation may get ahead.
+    private static final int BUFFER_COUNT = 4;
+    // The longest a buffer is kept before being written, in nanoseconds.
+    private static final long FLUSH_INTERVAL = 1000000000L;
+    // Handed to the writer to tell it to stop.
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    // The animal classes counted, in column order.
+    private final Class[] animalClasses;
+    // The counts of the latest step, in column order.
+    private final int[] counts;
+    // The file being written.
+    private final FileChannel channel;
+    // Buffers waiting to be written, and buffers free to be filled.
+    private final BlockingQueue<ByteBuffer> full, free;
+    // The thread writing to the file.
+    private final Thread writer;
+    // The buffer being filled.
+    private ByteBuffer buffer;
+    // When the buffer was last handed over.
+    private long lastFlush;
+    // The first error met by the writer, if any.
+    private volatile IOException failure;
+    // Whether the header has been written.
+    private boolean started;
+    // Whether the sink has been closed.
+    private boolean closed;
+
+    /**
+     * Create a sink writing to a file, replacing any existing one.
+     * @param file The file to write.
+     * @param animalClasses The classes of animal to record, in the
+     *                      order of the columns.
+     * @throws IOException If the file cannot be opened.
+     */
+    public StatsSink(Path file, Collection<Class> animalClasses) throws IOException
+    {
+        this.animalClasses = animalClasses.toArray(new Class[animalClasses.size()]);
+        counts = new int[this.animalClasses.length];
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        full = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT + 1);
+        free = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+        for(int i = 1; i < BUFFER_COUNT; i++) {
+            free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        lastFlush = System.nanoTime();
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "StatsSink " + file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Record the population counts of a step.
+     * @param step The step just completed.
+     * @param field The field after the step.
+     * @param stats The population counts after the step.
+     * @throws UncheckedIOException If writing to the file has failed.
+     */
+    public void stepCompleted(int step, Field field, FieldStats stats)
+    {
+        if(failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        start();
+        for(int i = 0; i < animalClasses.length; i++) {
+            counts[i] = stats.getCount(animalClasses[i]);
+        }
+        writeRow(step, counts);
+        if(System.nanoTime() - lastFlush > FLUSH_INTERVAL) {
+            endBlock();
+            handOver();
+        }
+    }
+
+    /**
+     * Write the remaining counts and close the file.
+     * @throws IOException If writing to the file has failed.
+     */
+    public void close() throws IOException
+    {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        start();
+        endBlock();
+        handOver();
+        put(END);
+        try {
+            writer.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write what comes before the counts.
+     * @param names The names of the columns: "step" followed by the
+     *              simple names of the animal classes.
+     */
+    protected abstract void writeHeader(String[] names);
+
+    /**
+     * Encode the counts of one step.
+     * @param step The step.
+     * @param counts The count of each animal class, in column order.
+     */
+    protected abstract void writeRow(int step, int[] counts);
+
+    /**
+     * Encode any rows held back by the subclass, before the buffer is
+     * handed over. By default nothing is held back.
+     */
+    protected void endBlock()
+    {
+    }
+
+    /**
+     * Return the buffer to encode into, with room for at least the
+     * given number of bytes.
+     * @param bytes The number of bytes about to be written.
+     * @return The buffer.
+     */
+    protected ByteBuffer reserve(int bytes)
+    {
+        if(buffer.remaining() < bytes) {
+            handOver();
+            if(buffer.remaining() < bytes) {
+                throw new IllegalArgumentException("Cannot reserve " + bytes + " bytes");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Write the header, if it has not been written yet.
+     */
+    private void start()
+    {
+        if(!started) {
+            started = true;
+            writeHeader(names());
+        }
+    }
+
+    /**
+     * @return The names of the columns.
+     */
+    private String[] names()
+    {
+        String[] names = new String[animalClasses.length + 1];
+        names[0] = "step";
+        for(int i = 0; i < animalClasses.length; i++) {
+            names[i + 1] = animalClasses[i].getSimpleName();
+        }
+        return names;
+    }
+
+    /**
+     * Give the buffer to the writer, if anything has been encoded,
+     * and carry on with a free one.
+     */
+    private void handOver()
+    {
+        lastFlush = System.nanoTime();
+        if(buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        put(buffer);
+        try {
+            buffer = free.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the writer", e);
+        }
+    }
+
+    /**
+     * Queue a buffer for the writer.
+     * @param filled The buffer, ready to be read.
+     */
+    private void put(ByteBuffer filled)
+    {
+        try {
+            full.put(filled);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the writer", e);
+        }
+    }
+
+    /**
+     * Write the queued buffers to the file until told to stop.
+     * Run by the writer thread. After an error the buffers are
+     * still taken, but no longer written.
+     */
+    private void write()
+    {
+        try {
+            ByteBuffer next = full.take();
+            while(next != END) {
+                try {
+                    while(failure == null && next.hasRemaining()) {
+                        channel.write(next);
+                    }
+                }
+                catch(IOException e) {
+                    failure = e;
+                }
+                next.clear();
+                free.add(next);
+                next = full.take();
+            }
+        }
+        catch(InterruptedException e) {
+            failure = new IOException("Writer interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package simulation;
+
+/**
+ * The working state handed to each actor as it acts: a store
+ * receiving newborn actors, the random stream to draw from
+ * and a neighbourhood cursor. One context is reused for every
+ * actor and every step, so acting allocates nothing beyond the
+ * newborns themselves. Deaths are counted in the metrics of the
+ * simulation, which may be shared by several contexts.
+ */
+public class StepContext
+{
+    // Actors born during the current step.
+    private final ActorStore births;
+    // A cursor for looking at adjacent locations.
+    private final Neighbourhood neighbourhood;
+    // The random generator for the actors.
+    private final Randomizer rand;
+    // The events of the current step, if they are being recorded.
+    private final EventBuffer events;
+    // The metrics receiving the deaths of the actors.
+    private final StepMetrics metrics;
+
+    /**
+     * Create a context drawing from the given random generator,
+     * counting deaths in metrics of its own.
+     * @param rand The random generator.
+     */
+    public StepContext(Randomizer rand)
+    {
+        this(rand, new StepMetrics());
+    }
+
+    /**
+     * Create a context drawing from the given random generator.
+     * @param rand The random generator.
+     * @param metrics The metrics receiving the deaths of the actors.
+     */
+    public StepContext(Randomizer rand, StepMetrics metrics)
+    {
+        this.rand = rand;
+        this.metrics = metrics;
+        births = new ActorStore();
+        neighbourhood = new Neighbourhood();
+        events = new EventBuffer();
+    }
+
+    /**
+     * @return The store receiving actors born during this step.
+     */
+    public ActorStore getBirths()
+    {
+        return births;
+    }
+
+    /**
+     * @return The neighbourhood cursor.
+     */
+    public Neighbourhood getNeighbourhood()
+    {
+        return neighbourhood;
+    }
+
+    /**
+     * @return The buffer receiving the events of the actors.
+     */
+    public EventBuffer getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * @return The metrics receiving the deaths of the actors.
+     */
+    public StepMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @return The random generator.
+     */
+    public Randomizer getRandom()
+    {
+        return rand;
+    }
+}
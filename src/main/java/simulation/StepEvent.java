@@ -0,0 +1,48 @@
+package simulation;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event for one step of a simulation, with the
+ * time of each phase and the births and deaths of the step. Its
+ * duration is that of the whole step, observers included.
+ */
+@Name("simulation.Step")
+@Label("Simulation Step")
+@Category("Simulation")
+@Description("A step of a predator-prey simulation")
+public class StepEvent extends Event
+{
+    @Label("Step")
+    int step;
+
+    @Label("Actors")
+    @Description("The number of actors at the start of the step")
+    int actors;
+
+    @Label("Act")
+    @Timespan(Timespan.NANOSECONDS)
+    long actTime;
+
+    @Label("Remove Dead")
+    @Timespan(Timespan.NANOSECONDS)
+    long removeDeadTime;
+
+    @Label("Births")
+    @Timespan(Timespan.NANOSECONDS)
+    long birthTime;
+
+    @Label("Census")
+    @Timespan(Timespan.NANOSECONDS)
+    long censusTime;
+
+    @Label("Born")
+    int born;
+
+    @Label("Died")
+    int died;
+}
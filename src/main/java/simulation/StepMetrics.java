@@ -0,0 +1,292 @@
+package simulation;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The running timings and counts of a simulation: how long each
+ * phase of a step takes, how many actors are born and how many die
+ * of each cause. Every counter is a LongAdder, so that the actors of
+ * a ParallelEngine can count on all threads at once without
+ * contending, and the view can add its paint times from the event
+ * dispatcher thread.
+ *
+ * The metrics can be read through JMX once registered, and every step
+ * and frame is also committed as a JFR event (StepEvent, FrameEvent)
+ * when a flight recording is running.
+ */
+public class StepMetrics implements StepMetricsMBean
+{
+    // The phases timed.
+    public static final int ACT = 0;
+    public static final int BIRTHS = 1;
+    public static final int REMOVE_DEAD = 2;
+    public static final int CENSUS = 3;
+    public static final int PAINT = 4;
+    private static final int PHASES = 5;
+
+    // The causes of death counted.
+    public static final int AGE = 0;
+    public static final int HUNGER = 1;
+    public static final int PREDATION = 2;
+    public static final int OVERCROWDING = 3;
+    public static final int HUNTING = 4;
+    private static final int CAUSES = 5;
+
+    // Numbers the registered metrics, so their names differ.
+    private static final AtomicInteger registered = new AtomicInteger();
+
+    // The time spent in each phase.
+    private final LongAdder[] nanos;
+    // The time spent acting by each species, when acting species by species.
+    private final LongAdder[] actNanos;
+    // The deaths of each cause.
+    private final LongAdder[] deaths;
+    private final LongAdder births;
+    private final LongAdder steps;
+    private final LongAdder frames;
+
+    /**
+     * Create metrics with every count zero.
+     */
+    public StepMetrics()
+    {
+        nanos = newAdders(PHASES);
+        actNanos = newAdders(Species.COUNT);
+        deaths = newAdders(CAUSES);
+        births = new LongAdder();
+        steps = new LongAdder();
+        frames = new LongAdder();
+    }
+
+    /**
+     * Add the time of a phase of a step, or of painting a frame.
+     * @param phase The phase: ACT, BIRTHS, REMOVE_DEAD, CENSUS or PAINT.
+     * @param time The time taken, in nanoseconds.
+     */
+    public void addTime(int phase, long time)
+    {
+        nanos[phase].add(time);
+        if(phase == PAINT) {
+            frames.increment();
+        }
+    }
+
+    /**
+     * Add the time taken by one species acting, which can only be told
+     * apart when the actors act species by species.
+     * @param species The species.
+     * @param time The time taken, in nanoseconds.
+     */
+    public void addActTime(byte species, long time)
+    {
+        actNanos[species].add(time);
+    }
+
+    /**
+     * Count a completed step.
+     */
+    public void stepped()
+    {
+        steps.increment();
+    }
+
+    /**
+     * Count actors born.
+     * @param count The number born.
+     */
+    public void born(int count)
+    {
+        births.add(count);
+    }
+
+    /**
+     * Count a death.
+     * @param cause The cause: AGE, HUNGER, PREDATION, OVERCROWDING or HUNTING.
+     */
+    public void died(int cause)
+    {
+        deaths[cause].increment();
+    }
+
+    /**
+     * @param phase The phase.
+     * @return The time spent in the phase, in nanoseconds.
+     */
+    public long getNanos(int phase)
+    {
+        return nanos[phase].sum();
+    }
+
+    /**
+     * @param cause The cause.
+     * @return The number of deaths of the cause.
+     */
+    public long getDeaths(int cause)
+    {
+        return deaths[cause].sum();
+    }
+
+    public long getSteps()
+    {
+        return steps.sum();
+    }
+
+    public long getActNanos()
+    {
+        return nanos[ACT].sum();
+    }
+
+    public long getRabbitActNanos()
+    {
+        return actNanos[Species.RABBIT].sum();
+    }
+
+    public long getFoxActNanos()
+    {
+        return actNanos[Species.FOX].sum();
+    }
+
+    public long getCoyoteActNanos()
+    {
+        return actNanos[Species.COYOTE].sum();
+    }
+
+    public long getHunterActNanos()
+    {
+        return actNanos[Species.HUNTER].sum();
+    }
+
+    public long getBirthNanos()
+    {
+        return nanos[BIRTHS].sum();
+    }
+
+    public long getRemoveDeadNanos()
+    {
+        return nanos[REMOVE_DEAD].sum();
+    }
+
+    public long getCensusNanos()
+    {
+        return nanos[CENSUS].sum();
+    }
+
+    public long getPaintNanos()
+    {
+        return nanos[PAINT].sum();
+    }
+
+    public long getFrames()
+    {
+        return frames.sum();
+    }
+
+    public long getBirths()
+    {
+        return births.sum();
+    }
+
+    public long getDeathsByAge()
+    {
+        return deaths[AGE].sum();
+    }
+
+    public long getDeathsByHunger()
+    {
+        return deaths[HUNGER].sum();
+    }
+
+    public long getDeathsByPredation()
+    {
+        return deaths[PREDATION].sum();
+    }
+
+    public long getDeathsByOvercrowding()
+    {
+        return deaths[OVERCROWDING].sum();
+    }
+
+    public long getDeathsByHunting()
+    {
+        return deaths[HUNTING].sum();
+    }
+
+    /**
+     * @return The number of actors eaten or shot.
+     */
+    public long getPredationEvents()
+    {
+        return deaths[PREDATION].sum() + deaths[HUNTING].sum();
+    }
+
+    /**
+     * Set every count back to zero. Counts made meanwhile may be lost.
+     */
+    public void reset()
+    {
+        resetAll(nanos);
+        resetAll(actNanos);
+        resetAll(deaths);
+        births.reset();
+        steps.reset();
+        frames.reset();
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, under
+     * a name of their own.
+     * @param label What the metrics are of, such as "Simulator".
+     * @return The name they are registered under.
+     */
+    public ObjectName register(String label)
+    {
+        try {
+            ObjectName name = new ObjectName("simulation:type=StepMetrics,name="
+                                             + ObjectName.quote(label + "-" + registered.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        }
+        catch(JMException e) {
+            throw new IllegalStateException("Cannot register the step metrics", e);
+        }
+    }
+
+    /**
+     * Remove metrics registered earlier from the platform MBean server.
+     * @param name The name they were registered under.
+     */
+    public static void unregister(ObjectName name)
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch(JMException e) {
+            throw new IllegalStateException("Cannot unregister " + name, e);
+        }
+    }
+
+    /**
+     * @return A number of zero counters.
+     */
+    private static LongAdder[] newAdders(int count)
+    {
+        LongAdder[] adders = new LongAdder[count];
+        for(int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Set a number of counters back to zero.
+     */
+    private static void resetAll(LongAdder[] adders)
+    {
+        for(LongAdder adder : adders) {
+            adder.reset();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package simulation;
+
+/**
+ * The management interface of StepMetrics, through which JMX
+ * clients such as jconsole read the timings and counts of a running
+ * simulation. Times are in nanoseconds, summed over all steps since
+ * the metrics were created or reset.
+ */
+public interface StepMetricsMBean
+{
+    long getSteps();
+    long getActNanos();
+    long getRabbitActNanos();
+    long getFoxActNanos();
+    long getCoyoteActNanos();
+    long getHunterActNanos();
+    long getBirthNanos();
+    long getRemoveDeadNanos();
+    long getCensusNanos();
+    long getPaintNanos();
+    long getFrames();
+    long getBirths();
+    long getDeathsByAge();
+    long getDeathsByHunger();
+    long getDeathsByPredation();
+    long getDeathsByOvercrowding();
+    long getDeathsByHunting();
+    long getPredationEvents();
+    void reset();
+}
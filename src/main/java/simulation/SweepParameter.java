@@ -0,0 +1,173 @@
+package simulation;
+import java.util.List;
+
+/**
+ * One setting of one kind of actor varied by a parameter sweep, such
+ * as the maximum age of foxes, with the values it may take: either a
+ * list of values, for a grid, or a range, for sampling.
+ */
+public class SweepParameter
+{
+    // The settings which can be varied, as in Dictionary.
+    public static final int MAX_AGE = 0;
+    public static final int BREED_AGE = 1;
+    public static final int MAX_LITTER = 2;
+    public static final int HUNT_AGE = 3;
+    // The names of the settings, indexed as above.
+    private static final String[] SETTING_NAMES = { "maxAge", "breedAge", "maxLitter", "huntAge" };
+
+    // The kind of actor, as an index into the list of settings:
+    // 0 rabbit, 1 fox, 2 coyote, 3 hunter, as in Control.
+    private final int kind;
+    // The setting varied.
+    private final int setting;
+    // The values of a grid, in order; also the whole range, inclusive.
+    private final int[] values;
+    private final int min, max;
+
+    /**
+     * Vary a setting over a list of values.
+     * @param kind The kind of actor: 0 rabbit, 1 fox, 2 coyote, 3 hunter.
+     * @param setting The setting, such as MAX_AGE.
+     * @param values The values the setting takes in a grid.
+     */
+    public SweepParameter(int kind, int setting, int[] values)
+    {
+        if(kind < 0 || kind > 3 || setting < 0 || setting >= SETTING_NAMES.length) {
+            throw new IllegalArgumentException("No such setting: " + kind + ", " + setting);
+        }
+        if(values.length == 0) {
+            throw new IllegalArgumentException("No values for " + SETTING_NAMES[setting]);
+        }
+        this.kind = kind;
+        this.setting = setting;
+        this.values = values.clone();
+        int low = values[0];
+        int high = values[0];
+        for(int value : values) {
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+        }
+        min = low;
+        max = high;
+    }
+
+    /**
+     * Vary a setting over a range, in equal steps for a grid.
+     * @param kind The kind of actor: 0 rabbit, 1 fox, 2 coyote, 3 hunter.
+     * @param setting The setting, such as MAX_AGE.
+     * @param min The lowest value.
+     * @param max The highest value.
+     * @param step The difference between neighbouring grid values.
+     */
+    public SweepParameter(int kind, int setting, int min, int max, int step)
+    {
+        this(kind, setting, range(min, max, step));
+    }
+
+    /**
+     * Vary a setting given by its name, over a list of values.
+     * @param name The name of the setting, such as "Fox.maxAge".
+     * @param values The values the setting takes in a grid.
+     * @return The parameter.
+     */
+    public static SweepParameter named(String name, int[] values)
+    {
+        int dot = name.indexOf('.');
+        if(dot < 0) {
+            throw new IllegalArgumentException("Not a setting name: " + name);
+        }
+        int kind = Species.named(name.substring(0, dot)) - Species.RABBIT;
+        for(int setting = 0; setting < SETTING_NAMES.length; setting++) {
+            if(SETTING_NAMES[setting].equalsIgnoreCase(name.substring(dot + 1))) {
+                return new SweepParameter(kind, setting, values);
+            }
+        }
+        throw new IllegalArgumentException("No such setting: " + name);
+    }
+
+    /**
+     * Vary a setting given by its name, over a range, in equal steps
+     * for a grid.
+     * @param name The name of the setting, such as "Fox.maxAge".
+     * @param min The lowest value.
+     * @param max The highest value.
+     * @param step The difference between neighbouring grid values.
+     * @return The parameter.
+     */
+    public static SweepParameter named(String name, int min, int max, int step)
+    {
+        return named(name, range(min, max, step));
+    }
+
+    /**
+     * @return The values the setting takes in a grid.
+     */
+    public int[] getValues()
+    {
+        return values.clone();
+    }
+
+    /**
+     * @return The lowest value of the setting.
+     */
+    public int getMin()
+    {
+        return min;
+    }
+
+    /**
+     * @return The highest value of the setting.
+     */
+    public int getMax()
+    {
+        return max;
+    }
+
+    /**
+     * @return The name of the setting, such as "Fox.maxAge".
+     */
+    public String getName()
+    {
+        return Species.classOf(kind + Species.RABBIT).getSimpleName() + "." + SETTING_NAMES[setting];
+    }
+
+    /**
+     * Give the setting a value.
+     * @param dict The settings of each kind of actor.
+     * @param value The value.
+     */
+    public void apply(List<Dictionary> dict, int value)
+    {
+        Dictionary d = dict.get(kind);
+        switch(setting) {
+            case MAX_AGE:
+                d.setMaxAge(value);
+                break;
+            case BREED_AGE:
+                d.setBreedAge(value);
+                break;
+            case MAX_LITTER:
+                d.setMaxLitter(value);
+                break;
+            default:
+                d.setHuntAge(value);
+                break;
+        }
+    }
+
+    /**
+     * @return The values from min to max, step apart.
+     */
+    private static int[] range(int min, int max, int step)
+    {
+        if(step < 1 || max < min) {
+            throw new IllegalArgumentException("Bad range: " + min + " to " + max + " by " + step);
+        }
+        int[] values = new int[(max - min) / step + 1];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = min + i * step;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,121 @@
+package simulation;
+
+/**
+ * The outcome of one run of a parameter sweep: the values of the
+ * swept settings, and summary measures of the populations.
+ */
+public class SweepResult
+{
+    // The values of the swept settings, in the order of the sweep.
+    private final int[] values;
+    // The number of steps run; fewer than asked if the run stopped early.
+    private final int steps;
+    // For each species, in the order of Species.animalClasses():
+    // the first step it had died out, or -1 if it survived,
+    private final int[] extinctionSteps;
+    // its mean population over the run,
+    private final double[] meanPopulations;
+    // and the average length of its population cycles, in steps,
+    // or 0 if there were none.
+    private final double[] periods;
+
+    /**
+     * Summarise a run.
+     * @param values The values of the swept settings.
+     * @param stats The counts of the run.
+     */
+    public SweepResult(int[] values, SimulatorStats stats)
+    {
+        this.values = values.clone();
+        steps = stats.getSize() - 1;
+        Class[] classes = Species.animalClasses().toArray(new Class[0]);
+        extinctionSteps = new int[classes.length];
+        meanPopulations = new double[classes.length];
+        periods = new double[classes.length];
+        for(int i = 0; i < classes.length; i++) {
+            summarise(i, stats.getCounts(classes[i]));
+        }
+    }
+
+    /**
+     * @return The values of the swept settings, in the order of the sweep.
+     */
+    public int[] getValues()
+    {
+        return values.clone();
+    }
+
+    /**
+     * @return The number of steps run.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @param species The index of a species in Species.animalClasses().
+     * @return The first step it had died out, or -1 if it survived.
+     */
+    public int getExtinctionStep(int species)
+    {
+        return extinctionSteps[species];
+    }
+
+    /**
+     * @param species The index of a species in Species.animalClasses().
+     * @return Its mean population over the run.
+     */
+    public double getMeanPopulation(int species)
+    {
+        return meanPopulations[species];
+    }
+
+    /**
+     * @param species The index of a species in Species.animalClasses().
+     * @return The average length of its population cycles, or 0.
+     */
+    public double getPeriod(int species)
+    {
+        return periods[species];
+    }
+
+    /**
+     * Work out the measures of one species.
+     * The cycle length is the number of steps between the first and
+     * last upward crossings of the mean, divided by the number of
+     * cycles between them. The first tenth of the run is left out,
+     * as the populations are still settling from their random start.
+     * @param species The index of the species.
+     * @param counts Its population at each step.
+     */
+    private void summarise(int species, IntSeries counts)
+    {
+        int size = counts.size();
+        extinctionSteps[species] = -1;
+        long total = 0;
+        for(int step = 0; step < size; step++) {
+            int count = counts.get(step);
+            total += count;
+            if(count == 0 && extinctionSteps[species] < 0) {
+                extinctionSteps[species] = step;
+            }
+        }
+        double mean = (double) total / size;
+        meanPopulations[species] = mean;
+
+        int first = -1;
+        int last = -1;
+        int crossings = 0;
+        for(int step = size / 10 + 1; step < size; step++) {
+            if(counts.get(step - 1) < mean && counts.get(step) >= mean) {
+                if(first < 0) {
+                    first = step;
+                }
+                last = step;
+                crossings++;
+            }
+        }
+        periods[species] = crossings > 1 ? (double) (last - first) / (crossings - 1) : 0;
+    }
+}
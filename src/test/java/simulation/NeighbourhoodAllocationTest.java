@@ -0,0 +1,199 @@
+package simulation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks that the neighbourhood queries the actors make at every
+ * step allocate nothing, in fields with and without bitboards, and
+ * that neither do the actors' acts, as long as none is born.
+ */
+public class NeighbourhoodAllocationTest
+{
+    // The side of the field queried.
+    private static final int SIZE = 80;
+    // The rounds over the field run before and while measuring.
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 50;
+    // The steps the actors act before and while measuring.
+    private static final int WARMUP_STEPS = 300;
+    private static final int MEASURED_STEPS = 50;
+    // An age no actor reaches during the test.
+    private static final int NEVER = 1000000;
+
+    // Reads the bytes allocated by a thread.
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // Keeps the results of the queries in use.
+    private long sink;
+
+    @Test
+    public void flatFieldQueriesAllocateNothing()
+    {
+        assertAllocatesNothing(new FlatField(SIZE, SIZE));
+    }
+
+    @Test
+    public void chunkedFieldQueriesAllocateNothing()
+    {
+        assertAllocatesNothing(new ChunkedField(SIZE, SIZE));
+    }
+
+    @Test
+    public void actsAllocateNothingWithoutBirths()
+    {
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        // Populate a field with actors which never breed or grow old,
+        // so that no step creates an object for a newborn.
+        Field field = new FlatField(SIZE, SIZE);
+        StepContext context = new StepContext(new Randomizer(42));
+        Randomizer rand = context.getRandom();
+        for(int row = 0; row < SIZE; row++) {
+            for(int col = 0; col < SIZE; col++) {
+                Location location = new Location(row, col);
+                double draw = rand.nextDouble();
+                if(draw < 0.02) {
+                    new Hunter(NEVER, 18, true, context, field, location);
+                }
+                else if(draw < 0.05) {
+                    new Coyote(NEVER, NEVER, 5, true, context, field, location);
+                }
+                else if(draw < 0.09) {
+                    new Fox(NEVER, NEVER, 3, true, context, field, location);
+                }
+                else if(draw < 0.17) {
+                    new Rabbit(NEVER, NEVER, 4, true, context, field, location);
+                }
+            }
+        }
+        ActorStore actors = new ActorStore();
+        actors.adopt(context.getBirths());
+        for(int step = 0; step < WARMUP_STEPS; step++) {
+            actAll(actors, context);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+        before = threads.getThreadAllocatedBytes(thread);
+        long acts = 0;
+        for(int step = 0; step < MEASURED_STEPS; step++) {
+            acts += actAll(actors, context);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        assertTrue("too few acts measured: " + acts, acts > 1000);
+        assertEquals("births", 0, context.getBirths().size());
+        assertEquals("bytes allocated by the acts", 0, allocated);
+        assertOccupancyMatches(field);
+    }
+
+    /**
+     * Let every live actor act once, as a step does.
+     * @return The number of acts.
+     */
+    private static int actAll(ActorStore actors, StepContext context)
+    {
+        context.getEvents().clear();
+        int acts = 0;
+        for(int slot = 0; slot < actors.size(); slot++) {
+            Actor actor = actors.get(slot);
+            if(actor.isAlive()) {
+                actor.act(context);
+                acts++;
+            }
+        }
+        return acts;
+    }
+
+    /**
+     * Populate a field, warm the queries up, then query every
+     * location of it and check the bytes allocated meanwhile.
+     * @param field The empty field to query.
+     */
+    private void assertAllocatesNothing(Field field)
+    {
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        SimulationEngine engine = new SimulationEngine(Dictionary.defaults(), field, new Randomizer(42));
+        engine.simulateOneStep();
+        Randomizer rand = new Randomizer(7);
+        Neighbourhood near = new Neighbourhood();
+        for(int round = 0; round < WARMUP_ROUNDS; round++) {
+            queryAll(field, near, rand);
+        }
+
+        long thread = Thread.currentThread().getId();
+        // The reading itself may cost a few bytes; measure that first.
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+        before = threads.getThreadAllocatedBytes(thread);
+        for(int round = 0; round < MEASURED_ROUNDS; round++) {
+            queryAll(field, near, rand);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        assertTrue("nothing was queried", sink != 0);
+        assertEquals("bytes allocated by the queries", 0, allocated);
+        assertOccupancyMatches(field);
+    }
+
+    /**
+     * Check that the bitboards of a field, if it keeps them, mark
+     * exactly its occupants and their sexes.
+     * @param field The field.
+     */
+    private static void assertOccupancyMatches(Field field)
+    {
+        Occupancy occupancy = field.getOccupancy();
+        if(occupancy == null) {
+            return;
+        }
+        for(int row = 0; row < field.getDepth(); row++) {
+            for(int col = 0; col < field.getWidth(); col++) {
+                byte species = field.getSpeciesAt(row, col);
+                Object occupant = field.getObjectAt(row, col);
+                if(occupancy.isOccupied(row, col) != (species != Species.EMPTY)) {
+                    fail("occupancy differs from the grid at " + row + "," + col);
+                }
+                boolean male = occupant instanceof Animal && !((Animal) occupant).isFemale();
+                if(species != Species.EMPTY && occupancy.isMale(row, col, species) != male) {
+                    fail("sex differs from the grid at " + row + "," + col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make the queries of an actor at every location: count the free
+     * neighbours, look for a mate, and move the occupant, if any, to
+     * a free neighbour and back.
+     */
+    private void queryAll(Field field, Neighbourhood near, Randomizer rand)
+    {
+        for(int row = 0; row < SIZE; row++) {
+            for(int col = 0; col < SIZE; col++) {
+                sink += field.countFreeAdjacent(row, col);
+                if(field.hasAdjacentMale(Fox.class, row, col)) {
+                    sink++;
+                }
+                if(field.hasAdjacentMale(Species.RABBIT, row, col)) {
+                    sink++;
+                }
+                if(field.getObjectAt(row, col) == null) {
+                    continue;
+                }
+                near.around(field, row, col, rand);
+                if(near.nextFree()) {
+                    field.move(row, col, near.getRow(), near.getCol());
+                    field.move(near.getRow(), near.getCol(), row, col);
+                    sink++;
+                }
+            }
+        }
+    }
+}